@@ -2,9 +2,8 @@ package Automatas;
 
 import CAClassPackage.*;
 
-import CellTypes.Cell;
+import Engines.PackedElementaryRow;
 
-import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
@@ -25,9 +24,12 @@ import java.util.*;
  * This class holds all methods for rendering an Elementary CA to the screen
  */
 public class Elementary extends Application {
-    //TODO: rect.widthProperty().bind(primaryStage.widthProperty().divide(cellSize))
-    //Hashmap holding neighborhoods as a String, and it's corresponding rule (Status)
-    static HashMap<String, Status> ruleTable;
+    //Wolfram rule number, bit n is the rule for the neighborhood whose binary value is n
+    static int ruleNumber;
+    //ARGB color of dead and alive cells
+    static final int[] PALETTE = {0x00000000, 0xFF000000};
+    //File every generation is streamed to, or null to only keep the ones on screen
+    public static File historyFile = null;
 
     public static void main(String[] args) {
         launch(args);
@@ -99,11 +101,11 @@ public class Elementary extends Application {
 
         //Event handler for when user tries to submit input
         submit.setOnMousePressed(event -> {
-            ArrayList<Cell> initialState = null;
+            byte[] initialState = null;
 
             try {
-                setRuleTable(parseBinaryRule(bitTextField.getText()));
-                initialState = parseInitialState(stateTextField.getText());
+                setRule(parseBinaryRule(bitTextField.getText()));
+                initialState = GridParser.parseElementaryRow(stateTextField.getText());
 
             } catch (IllegalArgumentException | IllegalInitialStateException e) {
                 //If invalid input, show alert with message
@@ -152,17 +154,9 @@ public class Elementary extends Application {
                         /*
                         Parse inputs
                          */
-                    //Set up list of status'
-                    List<Status> statusList = new ArrayList<>();
-                    //Parse each status
-                    for (char character : fin.nextLine().toCharArray()) {
-                        byte temp = (byte) Integer.parseInt("" + character);
-                        statusList.add((temp == 1) ? Status.ALIVE : Status.DEAD);
-                    }
-
-
-                    setRuleTable(statusList);
-                    ArrayList<Cell> initialState = parseInitialState(fin.nextLine());
+                    //Parse rule bits, then the initial row
+                    ruleNumber = GridParser.parseRuleBits(fin.nextLine());
+                    byte[] initialState = GridParser.parseElementaryRow(fin.nextLine());
 
 
                     //Start animation
@@ -189,7 +183,7 @@ public class Elementary extends Application {
 
     /**
      * First parses input into an integer, then checks if in valid range ([0-255]),
-     * finally uses {@link #setRuleTable(List)} Rules in order to put rules into hashmap
+     * finally uses {@link #setRule(List)} in order to set the rule number
      *
      * @param input unparsed user input
      */
@@ -225,46 +219,24 @@ public class Elementary extends Application {
     }
 
     /**
-     * Takes a list of statuses, and sets up rule table
+     * Takes a list of statuses, and sets up the rule number
      */
-    private static void setRuleTable(List<Status> statusList) {
-        //Put rule table into hashmap
-        ruleTable = new HashMap<>() {{
-            put("111", statusList.get(0));
-            put("110", statusList.get(1));
-            put("101", statusList.get(2));
-            put("100", statusList.get(3));
-            put("011", statusList.get(4));
-            put("010", statusList.get(5));
-            put("001", statusList.get(6));
-            put("000", statusList.get(7));
-        }};
+    private static void setRule(List<Status> statusList) {
+        ruleNumber = toRuleNumber(statusList);
     }
 
     /**
-     * Takes in input and returns a row of Cells
-     *
-     * @param input unparsed initial state
-     * @return list of cells
+     * @param statusList rules as made by {@link #parseBinaryRule(String)}
+     * @return Wolfram rule number of the rules
      */
-    private static ArrayList<Cell> parseInitialState(String input) throws IllegalInitialStateException {
-        ArrayList<Cell> initialState = new ArrayList<>();
-
-        char[] chars = input.toCharArray();
-
-        for (int temp, i = 0; i < chars.length; i++) {
-            temp = Integer.parseInt("" + chars[i]);
-
-            if (temp == 0 || temp == 1) {
-                //If cell is '1' it's Alive, otherwise if it's '0' it's Dead
-                initialState.add((temp == 1) ? new Cell(Status.ALIVE) : new Cell(Status.DEAD));
-
-            } else {
-                throw new IllegalInitialStateException();
-            }
+    static int toRuleNumber(List<Status> statusList) {
+        //First status is the rule for "111", the last for "000"
+        int ruleNum = 0;
+        for (Status status : statusList) {
+            ruleNum = (ruleNum << 1) | status.getBit();
         }
 
-        return initialState;
+        return ruleNum;
     }
 
 
@@ -273,93 +245,9 @@ public class Elementary extends Application {
      *
      * @param initialState the state the CA starts in
      */
-    private static void generateAnimation(ArrayList<Cell> initialState) {
-        GridPane grid = new GridPane();
-        grid.setMinSize(800, 800);
-        grid.setHgap(1);
-        grid.setVgap(1);
-
-        //Set size of each cell and add to gridPane
-        final double cellSize = 800.0 / initialState.size();
-        for (int i = 0; i < initialState.size(); i++) {
-            initialState.get(i).setSize(cellSize);
-            grid.add(initialState.get(i).getNode(), i, 0);
-        }
-
-        //Initialize Stage
-        Stage primaryStage = GUIMethodPackage.render(grid, "Elementary CA");
-
-        AnimationTimer animation = new AnimationTimer() {
-            private ArrayList<Cell> currentGen = initialState;
-            //private long lastUpdate;
-
-            @Override
-            public void handle(long now) {
-                //if (now - lastUpdate >= 900_000_000) { //For timing each update
-                currentGen = generateNextGeneration(currentGen, cellSize);
-                //Set resizing properties to all cells
-                for(Cell cell: currentGen) {
-                    cell.getNode().widthProperty().bind(primaryStage.widthProperty().divide(currentGen.size()));
-                    cell.getNode().heightProperty().bind(primaryStage.heightProperty().divide(currentGen.size()));
-                }
-                //Update gridPane
-                int row = grid.getRowCount();
-                int col = 0;
-                for (Cell cell : currentGen) {
-                    grid.add(cell.getNode(), col++, row);
-                }
-
-                //lastUpdate = now;
-                //}
-            }
-        };
-
-
-        animation.start();
-    }
-
-    /**
-     * Generates each new generation every frame
-     *
-     * @param currentGen current gen
-     * @param cellSize   size each cell should be
-     * @return new generation of cells
-     */
-    private static ArrayList<Cell> generateNextGeneration(ArrayList<Cell> currentGen, double cellSize) {
-        ArrayList<Cell> newGen = new ArrayList<>();
-
-
-        StringBuilder neighborhood = new StringBuilder();
-        //Bytes representing the state of each neighbor
-        int rightNeighbor;
-        int leftNeighbor;
-
-        for (int i = 0; i < currentGen.size(); i++) {
-
-            //Wrap indexes if they exceed grid size
-            if (i == 0) {
-                leftNeighbor = currentGen.get(currentGen.size() - 1).getStatusBit();
-                rightNeighbor = currentGen.get(i + 1).getStatusBit();
-            } else if (i == currentGen.size() - 1) {
-                leftNeighbor = currentGen.get(i - 1).getStatusBit();
-                rightNeighbor = currentGen.get(0).getStatusBit();
-            } else {
-                leftNeighbor = currentGen.get(i - 1).getStatusBit();
-                rightNeighbor = currentGen.get(i + 1).getStatusBit();
-            }
-
-
-            //Construct local neighborhood
-            neighborhood.append(leftNeighbor);
-            neighborhood.append(currentGen.get(i).getStatusBit());
-            neighborhood.append(rightNeighbor);
-
-
-            //Determine new cell status from rule table
-            newGen.add(new Cell(ruleTable.get(neighborhood.toString()), cellSize));
-            neighborhood = new StringBuilder();
-        }
-
-        return newGen;
+    private static void generateAnimation(byte[] initialState) {
+        //Row is stepped by the bit-packed engine, and drawn as a scrolling space-time diagram
+        PackedElementaryRow currentGen = new PackedElementaryRow(ruleNumber, initialState);
+        GUIMethodPackage.animateHistory(currentGen, PALETTE, historyFile, "Elementary CA");
     }
 }
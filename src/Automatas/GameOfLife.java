@@ -1,26 +1,42 @@
 package Automatas;
 
 import CAClassPackage.*;
-import CellTypes.Cell;
+import Engines.Checkpointer;
+import Engines.ChunkedGrid;
+import Engines.HashLife;
+import Engines.LifeLikeRule;
+import Engines.LifeRule;
+import Engines.PackedLifeGrid;
+import Engines.ParallelStepper;
+import Engines.SimulationLoop;
 
-import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
 
 /**
  * This class represents all related methods for rendering the Game Of Life on a GUI
  */
 public class GameOfLife extends Application {
+    //Color of each cell state, indexed by state
+    private static final Color[] PALETTE = {Color.TRANSPARENT, Color.BLACK};
+    //If the grid grows without bound instead of wrapping, the window then shows the initial grid's area
+    public static boolean unbounded = false;
+    //Generations per second target, unless set by SimulationLoop.GENERATIONS_PER_SECOND_PROPERTY
+    private static final double GENERATIONS_PER_SECOND = 10;
+    //How the bounded grid treats cells past its edges
+    public static EdgeMode edgeMode = EdgeMode.TOROIDAL;
+    //Rule chosen in the launcher, null to use the rule of an RLE file, or B3/S23
+    public static LifeLikeRule rule = null;
 
     public static void main(String[] args) {
         launch(args);
@@ -49,7 +65,9 @@ public class GameOfLife extends Application {
         manualButton.setOnMousePressed(event -> promptUser(primaryStage));
         fileButton.setOnMousePressed(event -> {
 
-            File[] files = new File("resources/gameOfLife").listFiles();
+            //Text grids, RLE patterns and binary grids
+            File[] files = new File("resources/gameOfLife").listFiles((folder, name) -> name.endsWith(".txt")
+                    || name.endsWith(RleReader.EXTENSION) || name.endsWith(GridFile.EXTENSION));
 
             if (files != null && files.length != 0) {
                 filePrompt(primaryStage, files);
@@ -116,10 +134,10 @@ public class GameOfLife extends Application {
                 if (numRows < 3) throw new IllegalInitialStateException("Must have at least 3 rows.");
 
                 //Parse initial state
-                CellArray<Cell> initialState = parseInitialState(gridInput.getText(), numRows, numCols);
+                StateGrid initialState = GridParser.parseLifeGrid(gridInput.getText(), numRows, numCols);
 
                 //Start animation
-                generateAnimation(numRows, numCols, initialState);
+                generateAnimation(numRows, numCols, initialState, (rule == null) ? LifeLikeRule.CONWAY : rule);
                 primaryStage.close();
 
             } catch (IllegalArgumentException e) {
@@ -147,35 +165,46 @@ public class GameOfLife extends Application {
         Label label = new Label("Select file: ");
         filePrompt.getChildren().add(label);
 
+        //Optional generation to jump to with HashLife before animating
+        Label jumpLabel = new Label("Jump to generation (optional):");
+        TextField jumpField = new TextField();
+        filePrompt.getChildren().add(jumpLabel);
+        filePrompt.getChildren().add(jumpField);
+
 
         for (File file : files) {
             //Create new button for opening current file
-            Button fileOpen = new Button(file.getName().split("\\.")[0]);
+            //Text grids are named without their extension, other formats keep it
+            Button fileOpen = new Button(file.getName().endsWith(".txt")
+                    ? file.getName().split("\\.")[0] : file.getName());
 
             //Set Event handler
             fileOpen.setOnMousePressed(event -> {
-                try (Scanner fin = new Scanner(new FileInputStream(file))) {
-                        /*
-                        Read in file info
-                         */
-                    //Reading in first two integer values
-                    Scanner scan = new Scanner(fin.nextLine());
-                    int numRows = scan.nextInt();
-                    int numCols = scan.nextInt();
-
-                    //Read in each line of grid
-                    StringBuilder grid = new StringBuilder();
-                    while (fin.hasNextLine()) {
-                        grid.append(fin.nextLine()).append("\n");
+                try {
+                    //Read in file, RLE files may give their own rule
+                    StateGrid lifeArray = GridParser.readLifeFile(file);
+                    LifeLikeRule lifeRule = rule;
+                    if (lifeRule == null && file.getName().endsWith(RleReader.EXTENSION)) {
+                        lifeRule = RleReader.readRule(file);
+                    }
+                    if (lifeRule == null) lifeRule = LifeLikeRule.CONWAY;
+
+                    if (!jumpField.getText().isBlank()) {
+                        long jump = Long.parseLong(jumpField.getText().trim());
+                        if (jump < 0) throw new IllegalArgumentException("Generation to jump to can't be negative.");
+                        jumpAhead(primaryStage, filePrompt, lifeArray, lifeRule, jump);
+                        return;
                     }
 
                     //Start animation
                     primaryStage.close();
-                    CellArray<Cell> lifeArray = parseInitialState(grid.toString(), numRows, numCols);
-                    generateAnimation(numRows, numCols, lifeArray);
+                    generateAnimation(lifeArray.numRows, lifeArray.numCols, lifeArray, lifeRule);
 
-                } catch (FileNotFoundException | IllegalInitialStateException e) {
+                } catch (IOException | IllegalInitialStateException e) {
                     e.printStackTrace();
+                } catch (IllegalArgumentException e) {
+                    Alert alert = new Alert(Alert.AlertType.WARNING, "Must enter a valid positive generation to jump to.");
+                    alert.showAndWait();
                 }
             });
 
@@ -193,173 +222,139 @@ public class GameOfLife extends Application {
     }
 
     /**
-     * Attempts to parse the initial grid into 1's and 0's
+     * Jumps a pattern ahead with HashLife on a background thread, as large jumps can take a long time,
+     * then animates the same area the file covers. The prompt is disabled until the jump is done
      *
-     * @param input    Unparsed input from user
-     * @param rowCount Amount of rows the grid should be
-     * @param colCount Amount of columns the grid should be
-     * @return A LifeArray with the parsed 2D grid
-     * @throws IllegalInitialStateException If the grid has an invalid amount of rows/cols, or if it contains
-     *                                      anything other than a 1 or a 0.
+     * @param lifeArray Grid read from the file
+     * @param lifeRule  Rule to step with
+     * @param jump      Generations to jump ahead
      */
-    private static CellArray<Cell> parseInitialState(String input, int rowCount, int colCount)
-            throws IllegalInitialStateException {
-
-        String[] unparsedList = input.split("\\n");
-
-
-        //Check if valid amount of rows
-        if (unparsedList.length != rowCount) {
-            throw new IllegalInitialStateException("Must enter valid amount of rows in initial state grid.");
-        }
-
-        //Set up List
-        CellArray<Cell> initialState = new CellArray<>(rowCount, colCount);
-
-        //Start parsing
-        int rowIndex = 0;
-        for (String col : unparsedList) {
-            //Check if valid amount of columns
-            if (col.length() != colCount) {
-                throw new IllegalInitialStateException("Must enter valid amount of columns in initial state grid.");
+    private static void jumpAhead(Stage primaryStage, VBox filePrompt, StateGrid lifeArray, LifeLikeRule lifeRule,
+                                  long jump) {
+        Task<StateGrid> task = new Task<>() {
+            @Override
+            protected StateGrid call() {
+                HashLife hashLife = HashLife.fromStateGrid(lifeArray, HashLife.DEFAULT_MAX_NODES, lifeRule);
+                hashLife.advance(jump);
+                return hashLife.viewport(0, 0, lifeArray.numRows, lifeArray.numCols);
             }
+        };
 
-            int colIndex = 0;
-            byte temp;
-            for (char character : col.toCharArray()) {
-                //Try to parse each Cell
-                try {
-                    temp = (byte) Integer.parseInt("" + character);
-                } catch (IllegalArgumentException e) {
-                    throw new IllegalInitialStateException("Initial state must only consist of 1's and 0's.");
-                }
-
-                //If not 1 or 0, this isn't a valid cell state
-                if (!(temp == 1 || temp == 0)) {
-                    throw new IllegalInitialStateException("Initial state must only consist of 1's and 0's.");
-                }
-
-
-                initialState.set(rowIndex, colIndex, ((temp == 1) ? new Cell(Status.ALIVE) : new Cell(Status.DEAD)));
-
-                ++colIndex;
+        task.setOnSucceeded(event -> {
+            StateGrid jumped = task.getValue();
+            primaryStage.close();
+            generateAnimation(jumped.numRows, jumped.numCols, jumped, lifeRule);
+        });
+        task.setOnFailed(event -> {
+            filePrompt.setDisable(false);
+            primaryStage.setTitle("Game of Life launcher");
+
+            //Patterns that grow too large either pass HashLife's bounds or use up the heap
+            Throwable e = task.getException();
+            String message;
+            if (e instanceof OutOfMemoryError) {
+                message = "Ran out of memory jumping to generation " + jump + ".";
+            } else if (e instanceof IllegalStateException) {
+                message = e.getMessage();
+            } else {
+                e.printStackTrace();
+                message = "Couldn't jump to generation " + jump + ".";
             }
-            ++rowIndex;
-        }
+            Alert alert = new Alert(Alert.AlertType.WARNING, message);
+            alert.showAndWait();
+        });
 
-        return initialState;
+        filePrompt.setDisable(true);
+        primaryStage.setTitle("Jumping to generation " + jump + "...");
+        Thread thread = new Thread(task, "HashLife jump");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-
     /**
-     * Generates the actual Game Of Life
+     * Generates the actual Game Of Life, resuming from the latest checkpoint instead if
+     * {@link Checkpointer#RESUME_PROPERTY} is set
      *
-     * @param numRows      Number of rows the grid is
-     * @param numCols      Number of cols the grid is
-     * @param initialState Initial grid to start animation from
+     * @param numRows    Number of rows the grid is
+     * @param numCols    Number of cols the grid is
+     * @param startState Initial grid to start animation from
+     * @param lifeRule   Rule to step with
      */
-    private static void generateAnimation(int numRows, int numCols, CellArray<Cell> initialState) {
-        GridPane gridPane = new GridPane();
-        gridPane.setVgap(1);
-        gridPane.setHgap(1);
+    private static void generateAnimation(int numRows, int numCols, StateGrid startState, LifeLikeRule lifeRule) {
+        //Checkpoints only hold the bounded grid, an unbounded one grows past it
+        Checkpointer checkpoints = unbounded ? null : Checkpointer.fromProperties("life " + lifeRule, 2);
+        StateGrid initialState = (checkpoints != null) ? checkpoints.resume(startState) : startState;
 
         //Calculate grid size
         final double cellSize = 800.0 / Math.max(numCols, numRows); //We want to take the larger value for calculating size
-        gridPane.setMinWidth(cellSize * numCols);
-        gridPane.setMinHeight(cellSize * numRows);
-
-        //Set cell size
-        for (Cell cell : initialState.cellIterator()) {
-            cell.setSize(cellSize);
-        }
-
-        //Render the initial state to the screen
-        GUIMethodPackage.renderFrame(gridPane, initialState);
-
-        //Initialize Stage and render stage
-        Stage primaryStage = GUIMethodPackage.render(gridPane, "Game Of Life");
 
-        //Generates each frame of game
-        AnimationTimer gameLoop = new AnimationTimer() {
-            private CellArray<Cell> currentGen = initialState;
-            private long lastUpdate = 0;
+        //Render the initial state to the screen, the grid scales with the Stage
+        GridRenderer renderer = new GridRenderer(numRows, numCols, PALETTE);
+        renderer.render(initialState);
+        Stage primaryStage = GUIMethodPackage.render(renderer, cellSize * numCols, cellSize * numRows,
+                lifeRule.isConway() ? "Game Of Life" : "Game Of Life " + lifeRule);
+
+        //Step with the bit-packed engine, or the chunked engine when unbounded, and unpack into the grid for rendering.
+        //The bit-packed engine only wraps, so other edge modes step the grid itself
+        initialState.setEdgeMode(edgeMode);
+        boolean packed = !unbounded && edgeMode == EdgeMode.TOROIDAL;
+        PackedLifeGrid life = packed ? PackedLifeGrid.fromStateGrid(initialState, lifeRule) : null;
+        ChunkedGrid chunked = unbounded ? ChunkedGrid.fromStateGrid(initialState, ChunkedGrid.lifeKernel(lifeRule)) : null;
+
+        //Generates each generation of game on its own thread, unpacking only the generations that get drawn,
+        //or every generation while a history is kept
+        SimulationLoop.Simulation simulation = new SimulationLoop.Simulation() {
+            @Override
+            public void step() {
+                if (unbounded) {
+                    chunked.step(ParallelStepper.getDefault());
+                } else if (packed) {
+                    life.step(ParallelStepper.getDefault());
+                } else {
+                    generateNextGeneration(initialState, lifeRule);
+                }
+            }
 
             @Override
-            public void handle(long now) {
-                if (now - lastUpdate >= 100_999_999) {     //Timing each update
-                    currentGen = generateNextGeneration(currentGen, cellSize);
-
-                    //Bind cell size to Stage
-                    for(Cell cell: currentGen.cellIterator()) {
-                        cell.getNode().widthProperty().bind(primaryStage.widthProperty().divide(currentGen.getWidth()));
-                        cell.getNode().heightProperty().bind(primaryStage.heightProperty().divide(currentGen.getHeight()));
-                    }
+            public StateGrid snapshot() {
+                if (!packed && !unbounded) return initialState.copy();
 
-                    GUIMethodPackage.renderFrame(gridPane, currentGen);
-                    lastUpdate = now;
+                StateGrid snapshot = new StateGrid(numRows, numCols);
+                if (unbounded) {
+                    chunked.copyInto(snapshot, 0, 0);
+                } else {
+                    life.copyInto(snapshot);
+                }
+                return snapshot;
+            }
 
+            @Override
+            public long cellsStepped() {
+                if (unbounded) return (long) chunked.getChunkCount() * ChunkedGrid.CHUNK_SIZE * ChunkedGrid.CHUNK_SIZE;
+                if (packed) return Math.min((long) life.getActiveTileCount() * 64 * 64, (long) numRows * numCols);
+                return (long) numRows * numCols;
+            }
 
-                }
+            @Override
+            public long population() {
+                if (unbounded) return chunked.population();
+                return packed ? life.population() : initialState.population();
             }
         };
-
-        gameLoop.start();
+        SimulationLoop loop = SimulationLoop.fromProperties(simulation, GENERATIONS_PER_SECOND);
+        loop.setCheckpointer(checkpoints);
+        //Every generation of a bounded grid is kept to be seeked back to, if GridHistory.HISTORY_PROPERTY is set
+        if (!unbounded) loop.setHistory(GridHistory.fromProperties(numRows, numCols));
+        GUIMethodPackage.animate(primaryStage, renderer, loop, null);
     }
 
     /**
-     * Generates the next frame for the game
+     * Generates the next generation of the game into the grid's back buffer, then swaps it in
      *
-     * @param pastGen  Past generation to generate from
-     * @param cellSize Size of each cell
-     * @return New generation
+     * @param grid     Grid holding the past generation
+     * @param lifeRule Rule to step with
      */
-    private static CellArray<Cell> generateNextGeneration(CellArray<Cell> pastGen, double cellSize) {
-        CellArray<Cell> newGen = new CellArray<>(pastGen.numRows, pastGen.numCols);
-        //Initialize with cells
-        for (int row = 0; row < pastGen.numRows; row++) {
-            for (int col = 0; col < pastGen.numCols; col++) {
-                newGen.set(row, col, new Cell(cellSize));
-            }
-        }
-
-
-        for (int row = 0; row < pastGen.numRows; row++) {
-            for (int col = 0; col < pastGen.numCols; col++) {
-
-                /*
-                Build neighborhood
-                 */
-                byte numAlive = 0;
-                for (int nestRow = row - 1; nestRow <= row + 1; nestRow++) {
-                    for (int nestCol = col - 1; nestCol <= col + 1; nestCol++) {
-                        if (!(nestCol == col && nestRow == row)) { //Makes sure we're not looking at the current cell
-                            if (pastGen.get(nestRow, nestCol).getStatus() == Status.ALIVE) ++numAlive;
-                        }
-                    }
-                }
-
-                /*
-                Update status of current cell
-                 */
-                if (pastGen.get(row, col).getStatus() == Status.ALIVE) {
-                    //Check if cell has less than 2 alive neighbors, or more than 3 alive neighbors
-                    if (numAlive < 2 || numAlive > 3) {
-                        newGen.get(row, col).setStatus(Status.DEAD);
-                    } else {
-                        newGen.get(row, col).setStatus(Status.ALIVE);
-                    }
-                } else {
-                    //If Cell is dead, we must check if it has three neighbors to revive it
-                    if (numAlive == 3) {
-                        newGen.get(row, col).setStatus(Status.ALIVE);
-                    } else {
-                        newGen.get(row, col).setStatus(Status.DEAD);
-                    }
-                }
-            }
-        }
-
-        return newGen;
+    static void generateNextGeneration(StateGrid grid, LifeLikeRule lifeRule) {
+        LifeRule.step(grid, lifeRule);
     }
-
 }
@@ -1,30 +1,52 @@
 package Automatas;
 
+import CAClassPackage.EdgeMode;
 import CAClassPackage.GUIMethodPackage;
-import CAClassPackage.CellArray;
+import CAClassPackage.GridHistory;
+import CAClassPackage.GridParser;
+import CAClassPackage.GridRenderer;
 import CAClassPackage.IllegalInitialStateException;
-import CAClassPackage.Status;
-import CellTypes.GenericCell;
+import CAClassPackage.StateGrid;
+import Engines.ActiveTiles;
+import Engines.Checkpointer;
+import Engines.ChunkedGrid;
+import Engines.Neighborhood;
+import Engines.PackedElementaryRow;
+import Engines.PackedStateGrid;
+import Engines.ParallelStepper;
+import Engines.RuleTable;
+import Engines.SimulationLoop;
 
-import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.geometry.Insets;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.util.*;
 
 public class GenericCellularAutomata extends Application {
     //Colors that generic cells can inherit
     public static ArrayList<Color> stateColors = new ArrayList<>();
-    //Rule table all cells follow
-    public static HashMap<String, Integer> ruleTable = new HashMap<>();
+    //Wolfram rule number all cells follow in 1D
+    static int ruleNumber;
+    //ARGB color of each state in 1D
+    private static final int[] PALETTE_1D = {0xFFFFFFFF, 0xFF000000};
+    //File every 1D generation is streamed to, or null to only keep the ones on screen
+    public static File historyFile = null;
+    //Compiled rule table all cells follow in 2D
+    public static RuleTable rules;
+    //Cells each 2D rule looks at
+    public static Neighborhood neighborhood = Neighborhood.vonNeumann();
+    //If the 2D grid grows without bound instead of wrapping, the window then shows the initial grid's area
+    public static boolean unbounded = false;
+    //2D generations per second target, unless set by SimulationLoop.GENERATIONS_PER_SECOND_PROPERTY
+    private static final double GENERATIONS_PER_SECOND = 60;
+    //How the bounded grid treats cells past its edges
+    public static EdgeMode edgeMode = EdgeMode.TOROIDAL;
 
     
     public static void main(String[] args) {
@@ -45,12 +67,15 @@ public class GenericCellularAutomata extends Application {
         Label dimensionLabel = new Label("Enter amount of dimensions:");
         Label statesLabel = new Label("Enter amount of states (1D can only have 2):");
         Label ruleTableLabel = new Label("Enter rule table file (Rule number for 1D):");
+        Label neighborhoodLabel = new Label("Enter neighborhood (2D, von Neumann if empty):");
         Label initialConfigLabel = new Label("Enter initial configuration.");
 
         //TextFields
         TextField dimensionField = new TextField();
         TextField statesField = new TextField();
         TextField ruleTableField = new TextField();
+        TextField neighborhoodField = new TextField();
+        neighborhoodField.setPromptText("moore, vonneumann:2, hexagonal or offsets such as -1,0 0,1");
         TextArea initialConfigField = new TextArea();
 
         //Buttons
@@ -78,19 +103,8 @@ public class GenericCellularAutomata extends Application {
                 }
 
                 if(dimensions == 1) {
-                    //Parse binary rule
-                    List<Status> statusList = Elementary.parseBinaryRule(ruleTableName);
-                    //Set rules
-                    ruleTable = new HashMap<>() {{
-                        put("111", statusList.get(0).getBit());
-                        put("110", statusList.get(1).getBit());
-                        put("101", statusList.get(2).getBit());
-                        put("100", statusList.get(3).getBit());
-                        put("011", statusList.get(4).getBit());
-                        put("010", statusList.get(5).getBit());
-                        put("001", statusList.get(6).getBit());
-                        put("000", statusList.get(7).getBit());
-                    }};
+                    //Parse binary rule, and set rules
+                    ruleNumber = Elementary.toRuleNumber(Elementary.parseBinaryRule(ruleTableName));
 
                     //Set state colors
                     stateColors.add(Color.WHITE);
@@ -98,6 +112,13 @@ public class GenericCellularAutomata extends Application {
 
 
                 } else {
+                    //Get neighborhood
+                    neighborhood = neighborhoodField.getText().isBlank()
+                            ? Neighborhood.vonNeumann() : Neighborhood.parse(neighborhoodField.getText());
+                    if (unbounded && neighborhood.radius > 1) {
+                        throw new IllegalInitialStateException("Unbounded grids only support neighborhoods of radius 1.");
+                    }
+
                     File ruleTableFile;
                     //Get rule table
                     if(!ruleTableName.contains("resources/")) {
@@ -107,7 +128,10 @@ public class GenericCellularAutomata extends Application {
                     }
 
                     //Parse rule table
-                    parseRules(ruleTableFile);
+                    parseRules(ruleTableFile, states);
+                    if (unbounded && !rules.keepsQuiet()) {
+                        throw new IllegalInitialStateException("Unbounded grids only support rules that keep all 0 neighborhoods at 0.");
+                    }
                     //Generate state colors
                     generateColors(states);
                 }
@@ -119,14 +143,15 @@ public class GenericCellularAutomata extends Application {
                     throw new IllegalInitialStateException("Must enter initial state.");
                 }
 
-                CellArray<GenericCell> initialState;
                 //Parse initial state
                 if (dimensions == 1) {
-                    initialState = parseInitial1DState(unparsedInitialState);
+                    byte[] initialState = parseInitial1DState(unparsedInitialState);
                     //Proceed with animation
-                    generate1DAnimation(initialState, (800.0 / initialState.numCols));
+                    generate1DAnimation(initialState);
                 } else {
-                    initialState = parseInitial2DState(unparsedInitialState, states);
+                    StateGrid initialState = parseInitial2DState(unparsedInitialState, states);
+                    //Wider neighborhoods read further past the edges
+                    if (neighborhood.radius > initialState.halo) initialState = initialState.withHalo(neighborhood.radius);
                     //Proceed with animation
                     generate2DAnimation(initialState, (800.0 / Math.max(initialState.numRows, initialState.numCols)));
                 }
@@ -144,14 +169,16 @@ public class GenericCellularAutomata extends Application {
         prompt.add(dimensionLabel, 0, 0);
         prompt.add(statesLabel, 0, 1);
         prompt.add(ruleTableLabel, 0, 2);
-        prompt.add(initialConfigLabel, 0, 3);
+        prompt.add(neighborhoodLabel, 0, 3);
+        prompt.add(initialConfigLabel, 0, 4);
 
         prompt.add(dimensionField, 3, 0);
         prompt.add(statesField, 3, 1);
         prompt.add(ruleTableField, 3, 2);
-        prompt.add(initialConfigField, 3, 3);
+        prompt.add(neighborhoodField, 3, 3);
+        prompt.add(initialConfigField, 3, 4);
 
-        prompt.add(submit, 1, 4);
+        prompt.add(submit, 1, 5);
 
 
         GUIMethodPackage.renderGridPrompt(primaryStage, prompt, "Generic CA Launcher");
@@ -177,167 +204,119 @@ public class GenericCellularAutomata extends Application {
         }
     }
 
-    public static CellArray<GenericCell> parseInitial1DState(String initialConfig)
-            throws IllegalInitialStateException {
-
+    public static byte[] parseInitial1DState(String initialConfig) throws IllegalInitialStateException {
         String[] unparsedList = initialConfig.split("\\n");
 
         if (unparsedList.length != 1) {
             throw new IllegalInitialStateException("Initial state must match entered number of dimensions.");
         }
 
-        //Set up list
-        CellArray<GenericCell> initialState = new CellArray<>(1, unparsedList[0].length());
-
-        int colIndex = 0;
-        for (char character : unparsedList[0].toCharArray()) {
-            int state = Integer.parseInt("" + character);
-
-            if (state < 0 || state > 2) {
-                throw new IllegalInitialStateException("Must enter valid number of cell states.");
-            }
-
-            //Create each new cell
-            initialState.set(0, colIndex, new GenericCell(state));
-
-            ++colIndex;
-        }
-
-        return initialState;
+        return GridParser.parseElementaryRow(unparsedList[0]);
     }
 
-    public static CellArray<GenericCell> parseInitial2DState(String initialConfig, int numStates) throws IllegalInitialStateException {
-        String[] unparsedList = initialConfig.split("\\n");
-
-        //Check if valid amount of rows
-        if (unparsedList.length < 2) {
-            throw new IllegalInitialStateException("Initial state must have at least 2 rows.");
-        }
-
-        final int numRows = unparsedList.length;
-        final int numCols = unparsedList[0].length();
-
-        //Set up list
-        CellArray<GenericCell> initialState = new CellArray<>(numRows, numCols);
-
-        int rowIndex = 0;
-        for (String col : unparsedList) {
-            //Check if valid amount of columns
-            if (col.length() != numCols) {
-                throw new IllegalInitialStateException("Must enter valid amount of columns in initial state grid.");
-            }
-
-            int colIndex = 0;
-            byte state;
-            for (char character : col.toCharArray()) {
-                //Try to parse each Cell's state
-                state = (byte) Integer.parseInt("" + character);
-
-                if (state < 0 || state > numStates) {
-                    throw new IllegalInitialStateException("Must enter valid cell states.");
-                }
-
-                //Create each new cell
-                initialState.set(rowIndex, colIndex, new GenericCell(state));
-
-                ++colIndex;
-            }
-            ++rowIndex;
-        }
-
-        return initialState;
+    public static StateGrid parseInitial2DState(String initialConfig, int numStates) throws IllegalInitialStateException {
+        return GridParser.parseStateGrid(initialConfig, numStates);
     }
 
-    public static void parseRules(File ruleTableFile) {
-        try (Scanner fin = new Scanner(new FileInputStream(ruleTableFile))) {
-            while (fin.hasNextLine()) {
-                String rule = fin.nextLine();
-
-                String key = rule.substring(0, 5);
-                int value = Integer.parseInt("" + rule.charAt(5));
-
-                char anchor = key.charAt(0);
-                List<String> keys = LangtonsLoop.rotateString(key.substring(1, 5));
-                for (String string : keys) {
-                    ruleTable.put(anchor + string, value);
-                }
-            }
+    /**
+     * Compiles a rule table file over {@link #neighborhood} into {@link #rules}
+     *
+     * @param numStates amount of states cells can be in
+     */
+    public static void parseRules(File ruleTableFile, int numStates) throws IllegalInitialStateException {
+        try {
+            rules = RuleTable.compile(ruleTableFile, neighborhood, numStates, 0);
         } catch (FileNotFoundException e) {
-            Alert alert = new Alert(Alert.AlertType.WARNING, "FILE NOT FOUND.");
-            alert.showAndWait();
+            throw new IllegalInitialStateException("FILE NOT FOUND.");
         }
     }
 
 
-    public static void generate1DAnimation(CellArray<GenericCell> initialState, final double cellSize) {
-        GridPane gridPane = new GridPane();
-        gridPane.setMinHeight(800);
-        gridPane.setMinWidth(800);
-        //Set cell size
-        for(GenericCell cell : initialState.cellIterator()) {
-            cell.setSize(cellSize);
-        }
-
-        //Render initial state
-        for(int col = 0;col < initialState.numCols;col++) {
-            gridPane.add(initialState.get(0, col).getNode(), col, 0);
-        }
-
-        //Generates each frame
-        AnimationTimer gameLoop = new AnimationTimer() {
-            private CellArray<GenericCell> currentGen = initialState;
-            private int row = 1;
+    /**
+     * Draws the 1D Cellular Automata as a scrolling space-time diagram, stepped by the bit-packed engine
+     *
+     * @param initialState state of each cell, 0 or 1
+     */
+    public static void generate1DAnimation(byte[] initialState) {
+        Stage stage = GUIMethodPackage.animateHistory(new PackedElementaryRow(ruleNumber, initialState),
+                PALETTE_1D, historyFile, "Generic CA");
+        stage.centerOnScreen();
+    }
 
+    /**
+     * Draws the 2D Cellular Automata as it's stepped, resuming from the latest checkpoint instead if
+     * {@link Checkpointer#RESUME_PROPERTY} is set
+     *
+     * @param startState initial state of the grid
+     * @param cellSize   size of each cell
+     */
+    public static void generate2DAnimation(StateGrid startState, final double cellSize) {
+        //Checkpoints only hold the bounded grid, an unbounded one grows past it
+        Checkpointer checkpoints = unbounded ? null : Checkpointer.fromProperties(rules.identity(), rules.numStates);
+        StateGrid initialState = (checkpoints != null) ? checkpoints.resume(startState) : startState;
+
+        //Render the initial state with the color of each state
+        GridRenderer renderer = new GridRenderer(initialState.numRows, initialState.numCols,
+                stateColors.toArray(new Color[0]));
+        renderer.render(initialState);
+
+        initialState.setEdgeMode(edgeMode);
+        //Tiles near cells that changed, the only ones stepped each generation
+        ActiveTiles tiles = new ActiveTiles(initialState.numRows, initialState.numCols,
+                ActiveTiles.DEFAULT_TILE_SIZE, ActiveTiles.DEFAULT_TILE_SIZE);
+        //Up to 16 states are packed into 1, 2 or 4 bits a cell, which tracks its own tiles
+        PackedStateGrid packed = (!unbounded && PackedStateGrid.bitsPerCell(rules.numStates) != 0)
+                ? PackedStateGrid.fromStateGrid(initialState, rules.numStates) : null;
+
+        //Chunks the grid grows into when unbounded
+        ChunkedGrid chunked = unbounded
+                ? ChunkedGrid.fromStateGrid(initialState, ChunkedGrid.ruleTableKernel(rules)) : null;
+
+        //Generates each generation on its own thread
+        SimulationLoop.Simulation simulation = new SimulationLoop.Simulation() {
             @Override
-            public void handle(long now) {
-                currentGen = generateNext1DGeneration(currentGen, cellSize);
-                //Draw to gridPane
-                for(int col = 0;col < currentGen.numCols;col++) {
-                    gridPane.add(currentGen.get(0, col).getNode(), col, row);
+            public void step() {
+                if (unbounded) {
+                    chunked.step(ParallelStepper.getDefault());
+                } else if (packed != null) {
+                    packed.step(rules, ParallelStepper.getDefault());
+                } else {
+                    generateNext2DGeneration(initialState, tiles);
                 }
-
-                ++row;
             }
-        };
 
-        /*
-        Boiler plate
-         */
-        draw(gridPane, gameLoop);
-    }
+            @Override
+            public StateGrid snapshot() {
+                if (!unbounded && packed == null) return initialState.copy();
 
-    private static void draw(GridPane gridPane, AnimationTimer gameLoop) {
-        Stage stage = new Stage();
-        Scene scene = new Scene(gridPane);
-        stage.setScene(scene);
-        stage.setResizable(false);
-        stage.setTitle("Generic CA");
-        stage.show();
-        stage.centerOnScreen();
-        gameLoop.start();
-    }
+                StateGrid snapshot = new StateGrid(initialState.numRows, initialState.numCols);
+                if (unbounded) {
+                    chunked.copyInto(snapshot, 0, 0);
+                } else {
+                    packed.copyInto(snapshot);
+                }
+                return snapshot;
+            }
 
-    public static void generate2DAnimation(CellArray<GenericCell> initialState, final double cellSize) {
-        GridPane gridPane = new GridPane();
-        gridPane.setMinWidth(cellSize * initialState.numCols);
-        gridPane.setMinHeight(cellSize * initialState.numRows);
-        //Set cell size
-        for (GenericCell cell : initialState.cellIterator()) {
-            cell.setSize(cellSize);
-        }
+            @Override
+            public long cellsStepped() {
+                if (unbounded) return (long) chunked.getChunkCount() * ChunkedGrid.CHUNK_SIZE * ChunkedGrid.CHUNK_SIZE;
 
-        //Render the initial state to the screen
-        GUIMethodPackage.renderFrame(gridPane, initialState);
+                return (packed != null)
+                        ? (long) packed.getActiveTileCount() * PackedStateGrid.TILE_ROWS * PackedStateGrid.TILE_COLS
+                        : (long) tiles.getActiveCount() * tiles.tileHeight * tiles.tileWidth;
+            }
 
+            @Override
+            public long population() {
+                if (unbounded) return chunked.population();
 
-        //Generates each frame of game
-        AnimationTimer gameLoop = new AnimationTimer() {
-            private CellArray<GenericCell> currentGen = initialState;
+                return (packed != null) ? packed.population() : initialState.population();
+            }
 
             @Override
-            public void handle(long now) {
-                currentGen = generateNext2DGeneration(currentGen, cellSize);
-                GUIMethodPackage.renderFrame(gridPane, currentGen);
+            public long ruleTableMisses() {
+                return rules.getMisses();
             }
         };
 
@@ -345,65 +324,18 @@ public class GenericCellularAutomata extends Application {
         /*
         BOILER PLATE GUI
          */
-        draw(gridPane, gameLoop);
-    }
-
-    private static CellArray<GenericCell> generateNext1DGeneration(CellArray<GenericCell> pastGen, final double cellSize) {
-        CellArray<GenericCell> newGen = new CellArray<>(1, pastGen.numCols);
-
-        for(int col = 0;col < pastGen.numCols; col++) {
-            newGen.set(0, col, new GenericCell(cellSize));
-        }
-
-        for(int col = 0;col < pastGen.numCols;col++) {
-            /*
-            Build neighborhood
-             */
-            String neighborhood = "";
-            neighborhood += pastGen.get(0, col - 1).getStatusBit();
-            neighborhood += pastGen.get(0, col).getStatusBit();
-            neighborhood += pastGen.get(0, col + 1).getStatusBit();
-            //Update current cells state
-            newGen.get(0, col).setStatus(ruleTable.get(neighborhood));
-        }
-
-        return newGen;
+        Stage stage = GUIMethodPackage.render(renderer,
+                cellSize * initialState.numCols, cellSize * initialState.numRows, "Generic CA");
+        stage.setResizable(false);
+        stage.centerOnScreen();
+        SimulationLoop loop = SimulationLoop.fromProperties(simulation, GENERATIONS_PER_SECOND);
+        loop.setCheckpointer(checkpoints);
+        //Every generation of a bounded grid is kept to be seeked back to, if GridHistory.HISTORY_PROPERTY is set
+        if (!unbounded) loop.setHistory(GridHistory.fromProperties(initialState.numRows, initialState.numCols));
+        GUIMethodPackage.animate(stage, renderer, loop, null);
     }
 
-    private static CellArray<GenericCell> generateNext2DGeneration(CellArray<GenericCell> pastGen, final double cellSize) {
-        CellArray<GenericCell> newGen = new CellArray<>(pastGen.numRows, pastGen.numCols);
-        //Initialize with cells
-        for (int row = 0; row < pastGen.numRows; row++) {
-            for (int col = 0; col < pastGen.numCols; col++) {
-                newGen.set(row, col, new GenericCell(cellSize));
-            }
-        }
-
-
-        //noinspection DuplicatedCode
-        for (int row = 0; row < pastGen.numRows; row++) {
-            for (int col = 0; col < pastGen.numCols; col++) {
-
-                /*
-                Build neighborhood
-                 */
-                String neighborhood = "";
-                //Add current cells status
-                neighborhood += pastGen.get(row, col).getState();
-                //Add all neighbors
-                neighborhood += pastGen.get(row - 1, col).getState(); //N
-                neighborhood += pastGen.get(row, col + 1).getState(); //E
-                neighborhood += pastGen.get(row + 1, col).getState(); //S
-                neighborhood += pastGen.get(row, col - 1).getState(); //W
-
-                //Update current cells state
-                try {
-                    newGen.get(row, col).setStatus(ruleTable.get(neighborhood));
-                } catch (NullPointerException ignored) {
-                }
-            }
-        }
-
-        return newGen;
+    static void generateNext2DGeneration(StateGrid grid, ActiveTiles tiles) {
+        rules.step(grid, tiles, ParallelStepper.getDefault());
     }
 }
@@ -1,24 +1,43 @@
 package Automatas;
 
+import CAClassPackage.EdgeMode;
 import CAClassPackage.GUIMethodPackage;
-import CAClassPackage.CellArray;
+import CAClassPackage.GridHistory;
+import CAClassPackage.GridParser;
+import CAClassPackage.GridRenderer;
+import CAClassPackage.IllegalInitialStateException;
+import CAClassPackage.StateGrid;
 import CellTypes.LangtonCell;
+import Engines.Checkpointer;
+import Engines.ChunkedGrid;
+import Engines.PackedStateGrid;
+import Engines.ParallelStepper;
+import Engines.RuleTable;
+import Engines.SimulationLoop;
 
-import javafx.animation.AnimationTimer;
 import javafx.application.Application;
-import javafx.scene.layout.GridPane;
+import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.util.*;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * This class contains all methods for generating Langtons Loop and rendering it in a GUI.
  */
 public class LangtonsLoop extends Application {
+    //Amount of states each cell can be in
+    private static final int NUM_STATES = 8;
     //Rules for each cell to follow in choosing it's next state based on its cell neighborhood
-    static HashMap<String, Integer> ruleTable = new HashMap<>();
+    static RuleTable ruleTable;
+    //If the grid grows without bound instead of wrapping, the window then shows the initial grid's area
+    public static boolean unbounded = false;
+    //Generations per second target, unless set by SimulationLoop.GENERATIONS_PER_SECOND_PROPERTY
+    private static final double GENERATIONS_PER_SECOND = 60;
+    //How the bounded grid treats cells past its edges
+    public static EdgeMode edgeMode = EdgeMode.TOROIDAL;
+    //Color of each cell state, indexed by state
+    private static final Color[] PALETTE = LangtonCell.palette();
 
     public static void main(String[] args) {
         launch(args);
@@ -33,99 +52,41 @@ public class LangtonsLoop extends Application {
      * Launcher method for Langtons Loop
      * First parses all rules from rule_table.txt using {@link #parseRules()},
      * Then parses the initial state of the grid using {@link #parseInitialState()},
+     * or resumes from the latest checkpoint if {@link Checkpointer#RESUME_PROPERTY} is set,
      * finally, calculates the size of each cell for rendering to the screen and uses
-     * {@link #generateNextGeneration(CellArray, double)} to generate the CA's animation
+     * {@link #generateNextGeneration(PackedStateGrid)} to generate the CA's animation
      */
     public static void launcher() {
         parseRules();
-        CellArray<LangtonCell> grid = parseInitialState();
+        StateGrid grid = parseInitialState();
         assert grid != null;
-        generateAnimation(grid, (800.0 / Math.max(grid.numCols, grid.numRows)));
+        //Checkpoints only hold the bounded grid, an unbounded one grows past it
+        Checkpointer checkpoints = unbounded ? null : Checkpointer.fromProperties(ruleTable.identity(), NUM_STATES);
+        if (checkpoints != null) grid = checkpoints.resume(grid);
+        generateAnimation(grid, (800.0 / Math.max(grid.numCols, grid.numRows)), checkpoints);
     }
 
     /**
-     * Reads in rule table file and puts every single rule into rules HashMap
-     * uses {@link #rotateString(String)} to find every possible permutation of each provided rule
+     * Reads in rule table file and compiles every rule into the rule table
      */
     private static void parseRules() {
-        try (Scanner fin = new Scanner(new FileInputStream("resources/langtonsLoop/rule_table.txt"))) {
-            while (fin.hasNextLine()) {
-                String rule = fin.nextLine();
-
-                String key = rule.substring(0, 5);
-                int value = Integer.parseInt("" + rule.charAt(5));
-
-                char anchor = key.charAt(0);
-                List<String> keys = rotateString(key.substring(1, 5));
-                for (String string : keys) {
-                    ruleTable.put(anchor + string, value);
-                }
-            }
-        } catch (FileNotFoundException ignored) {
+        try {
+            ruleTable = RuleTable.compile(new File("resources/langtonsLoop/rule_table.txt"), NUM_STATES, 0);
+        } catch (IOException | IllegalInitialStateException e) {
+            e.printStackTrace();
             System.exit(0);
         }
     }
 
-    /**
-     * Takes in a Cell neighborhood represented by a string and rotates
-     * the string to find each variation of it's Von Neumann neighborhood
-     *
-     * @param input Cell neighborhood
-     * @return List of all possible permutations
-     */
-    public static List<String> rotateString(String input) {
-        List<String> permutations = new ArrayList<>();
-        //Add first key
-        permutations.add(input);
-
-        //Find all permutations
-        StringBuilder stringBuilder;
-        for (int i = 0; i < 3; i++) { //3 possible valid rotations
-            stringBuilder = new StringBuilder(input);
-            char temp = stringBuilder.charAt(3);
-            stringBuilder.deleteCharAt(3);
-            stringBuilder.insert(0, temp);
-
-            input = stringBuilder.toString();
-            permutations.add(input);
-        }
-
-        return permutations;
-    }
-
     /**
      * Parses the initial state of the CA
      *
-     * @return CellArray of the initial state
+     * @return StateGrid of the initial state
      */
-    private static CellArray<LangtonCell> parseInitialState() {
-        try (Scanner fin = new Scanner(new FileInputStream("resources/langtonsLoop/init_config.txt"))) {
-            Scanner ints = new Scanner(fin.nextLine());
-            int numRows = ints.nextInt();
-            int numCols = ints.nextInt();
-
-            //Set up LangArray
-            CellArray<LangtonCell> grid = new CellArray<>(numRows, numCols);
-
-            int rowIndex = 0;
-            while (fin.hasNextLine()) {
-                int colIndex = 0;
-
-                String row = fin.nextLine();
-
-                //Look at each state
-                for (char character : row.toCharArray()) {
-                    int state = Integer.parseInt("" + character);
-                    grid.set(rowIndex, colIndex, new LangtonCell(state));
-
-
-                    ++colIndex;
-                }
-                ++rowIndex;
-            }
-
-            return grid;
-        } catch (FileNotFoundException e) {
+    private static StateGrid parseInitialState() {
+        try {
+            return GridParser.readStateFile(new File("resources/langtonsLoop/init_config.txt"), NUM_STATES);
+        } catch (IOException | IllegalInitialStateException e) {
             e.printStackTrace();
         }
 
@@ -135,82 +96,94 @@ public class LangtonsLoop extends Application {
 
     /**
      * Draws Cellular Automata onto the screen as it continues to generate each new generation
-     * with {@link #generateNextGeneration(CellArray, double)}
+     * with {@link #generateNextGeneration(PackedStateGrid)}
      *
      * @param initialState initial state of the grid
      * @param cellSize     size of each cell
+     * @param checkpoints  saves checkpoints of the run, or null
      */
-    private static void generateAnimation(CellArray<LangtonCell> initialState, final double cellSize) {
-        GridPane gridPane = new GridPane();
-        gridPane.setMinWidth(cellSize * initialState.numCols);
-        gridPane.setMinHeight(cellSize * initialState.numRows);
-        //Set cell size
-        for (LangtonCell cell : initialState.cellIterator()) {
-            cell.setSize(cellSize);
-        }
-        //Initialize gridPane
-        GUIMethodPackage.renderFrame(gridPane, initialState);
+    private static void generateAnimation(StateGrid initialState, final double cellSize, Checkpointer checkpoints) {
+        //Render the initial state
+        GridRenderer renderer = new GridRenderer(initialState.numRows, initialState.numCols, PALETTE);
+        renderer.render(initialState);
 
         //Initialize and render stage
-        Stage primaryStage = GUIMethodPackage.render(gridPane, "Langtons Loop");
+        Stage primaryStage = GUIMethodPackage.render(renderer,
+                cellSize * initialState.numCols, cellSize * initialState.numRows, "Langtons Loop");
         primaryStage.setResizable(false);
 
-        //Generates each frame of game
-        AnimationTimer gameLoop = new AnimationTimer() {
-            private CellArray<LangtonCell> currentGen = initialState;
+        initialState.setEdgeMode(edgeMode);
+        //8 states fit in 4 bits a cell, only tiles near cells that changed are stepped each generation
+        PackedStateGrid packed = unbounded ? null : PackedStateGrid.fromStateGrid(initialState, NUM_STATES);
+        //Chunks the grid grows into when unbounded
+        ChunkedGrid chunked = unbounded
+                ? ChunkedGrid.fromStateGrid(initialState, ChunkedGrid.ruleTableKernel(ruleTable)) : null;
 
+        //Generates each generation on its own thread
+        SimulationLoop.Simulation simulation = new SimulationLoop.Simulation() {
             @Override
-            public void handle(long now) {
-                currentGen = generateNextGeneration(currentGen, cellSize);
-                GUIMethodPackage.renderFrame(gridPane, currentGen);
+            public void step() {
+                if (unbounded) {
+                    chunked.step(ParallelStepper.getDefault());
+                } else {
+                    generateNextGeneration(packed);
+                }
             }
-        };
 
+            @Override
+            public StateGrid snapshot() {
+                StateGrid snapshot = new StateGrid(initialState.numRows, initialState.numCols);
+                if (unbounded) {
+                    chunked.copyInto(snapshot, 0, 0);
+                } else {
+                    packed.copyInto(snapshot);
+                }
+                return snapshot;
+            }
 
-        gameLoop.start();
-    }
+            @Override
+            public long cellsStepped() {
+                return unbounded
+                        ? (long) chunked.getChunkCount() * ChunkedGrid.CHUNK_SIZE * ChunkedGrid.CHUNK_SIZE
+                        : (long) packed.getActiveTileCount() * PackedStateGrid.TILE_ROWS * PackedStateGrid.TILE_COLS;
+            }
 
-    /**
-     * Used by {@link #generateAnimation(CellArray, double)} to generate each new generation of cells
-     *
-     * @param pastGen  past generation
-     * @param cellSize size of each cell
-     * @return new generation
-     */
-    private static CellArray<LangtonCell> generateNextGeneration(CellArray<LangtonCell> pastGen, final double cellSize) {
-        CellArray<LangtonCell> newGen = new CellArray<>(pastGen.numRows, pastGen.numCols);
-        //Initialize with cells
-        for (int row = 0; row < pastGen.numRows; row++) {
-            for (int col = 0; col < pastGen.numCols; col++) {
-                newGen.set(row, col, new LangtonCell(cellSize));
+            @Override
+            public long population() {
+                return unbounded ? chunked.population() : packed.population();
             }
-        }
 
-        //noinspection DuplicatedCode
-        for (int row = 0; row < pastGen.numRows; row++) {
-            for (int col = 0; col < pastGen.numCols; col++) {
-
-                /*
-                Build neighborhood
-                 */
-                String neighborhood = "";
-                //Add current cells status
-                neighborhood += pastGen.get(row, col).getState();
-                //Add all neighbors
-                neighborhood += pastGen.get(row - 1, col).getState(); //N
-                neighborhood += pastGen.get(row, col + 1).getState(); //E
-                neighborhood += pastGen.get(row + 1, col).getState(); //S
-                neighborhood += pastGen.get(row, col - 1).getState(); //W
-
-                //Update current cells state
-                try {
-                    newGen.get(row, col).setStatus(ruleTable.get(neighborhood));
-                } catch (NullPointerException ignored) {
-                }
+            @Override
+            public long ruleTableMisses() {
+                return ruleTable.getMisses();
             }
-        }
+        };
 
-        return newGen;
+        SimulationLoop loop = SimulationLoop.fromProperties(simulation, GENERATIONS_PER_SECOND);
+        loop.setCheckpointer(checkpoints);
+        //Every generation of a bounded grid is kept to be seeked back to, if GridHistory.HISTORY_PROPERTY is set
+        if (!unbounded) loop.setHistory(GridHistory.fromProperties(initialState.numRows, initialState.numCols));
+        //Report how much of the grid is active, and make neighborhoods missing from the rule table visible
+        GUIMethodPackage.animate(primaryStage, renderer, loop,
+                snapshot -> {
+                    String title = unbounded
+                            ? "Langtons Loop (chunks: " + chunked.getChunkCount()
+                            : "Langtons Loop (active tiles: " + packed.getActiveTileCount() + "/" + packed.getTileCount();
+                    if (ruleTable.getMisses() > 0) {
+                        title += ", rule table misses: " + ruleTable.getMisses();
+                    }
+                    primaryStage.setTitle(title + ")");
+                });
+    }
+
+    /**
+     * Used by {@link #generateAnimation(StateGrid, double, Checkpointer)} to generate each new generation of cells
+     * into the grid's back buffer, which is then swapped in, by looking up each neighborhood in the compiled rule table
+     *
+     * @param grid grid holding the past generation
+     */
+    static void generateNextGeneration(PackedStateGrid grid) {
+        grid.step(ruleTable, ParallelStepper.getDefault());
     }
 
 }
@@ -0,0 +1,57 @@
+package Benchmarks;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One measured operation, such as stepping a generation or parsing a file, with the parameters it runs with
+ */
+public class Benchmark {
+    /**
+     * Builds the state a benchmark runs on, before each iteration and outside of the measured time
+     */
+    public interface Setup {
+        /**
+         * @return the operation to measure
+         */
+        Operation setup() throws Exception;
+    }
+
+    /**
+     * The measured operation
+     */
+    public interface Operation {
+        /**
+         * @return any value made by the operation, which is consumed so the operation can't be optimized away
+         */
+        long run() throws Exception;
+    }
+
+    public final String name;
+    public final Map<String, String> params;
+    private final Setup setup;
+
+    /**
+     * @param params name and value of each parameter, in pairs
+     */
+    public Benchmark(String name, Setup setup, String... params) {
+        this.name = name;
+        this.setup = setup;
+
+        Map<String, String> paramMap = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < params.length; i += 2) {
+            paramMap.put(params[i], params[i + 1]);
+        }
+        this.params = Collections.unmodifiableMap(paramMap);
+    }
+
+    public Operation setup() throws Exception {
+        return setup.setup();
+    }
+
+    @Override
+    public String toString() {
+        return params.isEmpty() ? name : name + " " + params;
+    }
+}
@@ -0,0 +1,271 @@
+package Benchmarks;
+
+import Engines.SimulationMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks and writes their results as JSON, laid out like JMH's results so they can be compared
+ * between releases with the same tools.
+ * Each benchmark is warmed up, then measured over several timed iterations, giving its throughput in operations
+ * per second, and the bytes allocated per operation by the measuring thread. Work handed to other threads,
+ * such as a ParallelStepper's, shows up in the throughput but not the allocation.
+ * Like JMH's Level.Iteration setup, every iteration is set up afresh, so each one starts from the same state
+ * instead of wherever the last left off, such as a soup settled into ash or a cache already filled.
+ * Uses no GUI classes, so it runs anywhere the engines do
+ */
+public class BenchmarkRunner {
+    private static final String USAGE = String.join("\n",
+            "Usage: BenchmarkRunner [options]",
+            "  -f <regex>       only run benchmarks whose name matches",
+            "  -s <sizes>       grid sizes, default 64,256,1024,4096",
+            "  -d <densities>   starting densities, default 0.1,0.3,0.5",
+            "  -wi <count>      warmup iterations, default 2",
+            "  -i <count>       measured iterations, default 3",
+            "  -t <seconds>     time of each iteration, default 1",
+            "  -r <folder>      resources folder, default resources",
+            "  -o <file>        JSON results file, default benchmark-results.json",
+            "  -l               list benchmarks without running them");
+
+    //Options
+    private static Pattern filter = Pattern.compile("");
+    private static int[] sizes = {64, 256, 1024, 4096};
+    private static double[] densities = {0.1, 0.3, 0.5};
+    private static int warmupIterations = 2;
+    private static int iterations = 3;
+    private static double iterationSeconds = 1;
+    private static File resources = new File("resources");
+    private static File output = new File("benchmark-results.json");
+    private static boolean listOnly = false;
+
+    //Results are folded into this, so the JIT can't drop the operations that made them
+    private static volatile long sink;
+
+    public static void main(String[] args) throws IOException {
+        try {
+            parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.addAll(StepBenchmarks.create(sizes, densities, resources));
+        benchmarks.addAll(ParseBenchmarks.create(sizes, densities, resources));
+        benchmarks.addAll(RenderBenchmarks.create(sizes, densities));
+        benchmarks.addAll(HistoryBenchmarks.create());
+        benchmarks.removeIf(benchmark -> !filter.matcher(benchmark.name).find());
+
+        if (listOnly) {
+            benchmarks.forEach(System.out::println);
+            return;
+        }
+
+        List<String> results = new ArrayList<>();
+        for (Benchmark benchmark : benchmarks) {
+            String result = run(benchmark);
+            if (result != null) results.add(result);
+        }
+
+        try (PrintWriter out = new PrintWriter(output, "UTF-8")) {
+            out.println("[");
+            out.println(String.join(",\n", results));
+            out.println("]");
+        }
+        System.out.println("Results written to " + output);
+    }
+
+    private static void parseOptions(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-f": {
+                    filter = Pattern.compile(optionValue(args, ++i));
+                    break;
+                }
+                case "-s": {
+                    sizes = Arrays.stream(optionValue(args, ++i).split(","))
+                            .mapToInt(Integer::parseInt).toArray();
+                    break;
+                }
+                case "-d": {
+                    densities = Arrays.stream(optionValue(args, ++i).split(","))
+                            .mapToDouble(Double::parseDouble).toArray();
+                    break;
+                }
+                case "-wi": {
+                    warmupIterations = Integer.parseInt(optionValue(args, ++i));
+                    break;
+                }
+                case "-i": {
+                    iterations = Integer.parseInt(optionValue(args, ++i));
+                    if (iterations < 1) throw new IllegalArgumentException("Must measure at least 1 iteration.");
+                    break;
+                }
+                case "-t": {
+                    iterationSeconds = Double.parseDouble(optionValue(args, ++i));
+                    break;
+                }
+                case "-r": {
+                    resources = new File(optionValue(args, ++i));
+                    break;
+                }
+                case "-o": {
+                    output = new File(optionValue(args, ++i));
+                    break;
+                }
+                case "-l": {
+                    listOnly = true;
+                    break;
+                }
+                default: {
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        }
+    }
+
+    private static String optionValue(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + args[i - 1] + ".");
+        return args[i];
+    }
+
+    /**
+     * Warms up and measures one benchmark
+     *
+     * @return JSON result of the benchmark, or null if it failed
+     */
+    private static String run(Benchmark benchmark) {
+        double[] scores = new double[iterations];
+        double bytesPerOperation = 0;
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                measure(benchmark);
+            }
+
+            for (int i = 0; i < iterations; i++) {
+                double[] measurement = measure(benchmark);
+                scores[i] = measurement[0];
+                bytesPerOperation += measurement[1] / iterations;
+            }
+        } catch (Exception | OutOfMemoryError e) {
+            System.err.println(benchmark + " skipped: " + e);
+            return null;
+        }
+
+        double score = mean(scores);
+        double error = standardDeviation(scores, score);
+        System.out.printf(Locale.ROOT, "%-36s %-28s %14.3f +- %10.3f ops/s %14.1f B/op%n",
+                benchmark.name, benchmark.params, score, error, bytesPerOperation);
+
+        return toJson(benchmark, scores, score, error, bytesPerOperation);
+    }
+
+    /**
+     * Sets up a benchmark, then runs its operation over and over for one iteration
+     *
+     * @return operations per second, and bytes allocated per operation or NaN if it can't be measured
+     */
+    private static double[] measure(Benchmark benchmark) throws Exception {
+        System.gc();
+        Benchmark.Operation operation = benchmark.setup();
+
+        long iterationNanos = (long) (iterationSeconds * 1e9);
+        long allocatedBefore = SimulationMetrics.allocatedBytes();
+        long start = System.nanoTime();
+        long now;
+        long operations = 0;
+        long result = 0;
+
+        do {
+            result ^= operation.run();
+            ++operations;
+        } while ((now = System.nanoTime()) - start < iterationNanos);
+
+        long allocated = SimulationMetrics.allocatedBytes() - allocatedBefore;
+        sink = result;
+
+        return new double[]{operations / ((now - start) / 1e9),
+                (allocatedBefore < 0) ? Double.NaN : (double) allocated / operations};
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+
+        return sum / values.length;
+    }
+
+    private static double standardDeviation(double[] values, double mean) {
+        if (values.length < 2) return Double.NaN;
+
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    /**
+     * @return result in JMH's JSON layout, with the standard deviation of the iterations as the score error
+     */
+    private static String toJson(Benchmark benchmark, double[] scores, double score, double error,
+                                 double bytesPerOperation) {
+        StringBuilder json = new StringBuilder();
+        json.append("  {\n");
+        json.append("    \"benchmark\": ").append(quote(benchmark.name)).append(",\n");
+        json.append("    \"mode\": \"thrpt\",\n");
+        json.append("    \"threads\": 1,\n");
+        json.append("    \"warmupIterations\": ").append(warmupIterations).append(",\n");
+        json.append("    \"warmupTime\": ").append(quote(iterationSeconds + " s")).append(",\n");
+        json.append("    \"measurementIterations\": ").append(iterations).append(",\n");
+        json.append("    \"measurementTime\": ").append(quote(iterationSeconds + " s")).append(",\n");
+
+        json.append("    \"params\": {");
+        boolean first = true;
+        for (Map.Entry<String, String> param : benchmark.params.entrySet()) {
+            json.append(first ? "" : ", ").append(quote(param.getKey())).append(": ").append(quote(param.getValue()));
+            first = false;
+        }
+        json.append("},\n");
+
+        json.append("    \"primaryMetric\": {\n");
+        json.append("      \"score\": ").append(number(score)).append(",\n");
+        json.append("      \"scoreError\": ").append(number(error)).append(",\n");
+        json.append("      \"scoreUnit\": \"ops/s\",\n");
+        json.append("      \"rawData\": [[");
+        for (int i = 0; i < scores.length; i++) {
+            json.append((i == 0) ? "" : ", ").append(number(scores[i]));
+        }
+        json.append("]]\n");
+        json.append("    },\n");
+
+        json.append("    \"secondaryMetrics\": {\n");
+        json.append("      \"gc.alloc.rate.norm\": {\"score\": ").append(number(bytesPerOperation))
+                .append(", \"scoreUnit\": \"B/op\"}\n");
+        json.append("    }\n");
+        json.append("  }");
+
+        return json.toString();
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    //JSON has no NaN, so unknown values are written as null
+    private static String number(double value) {
+        return Double.isFinite(value) ? String.format(Locale.ROOT, "%.6f", value) : "null";
+    }
+}
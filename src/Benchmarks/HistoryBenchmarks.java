@@ -0,0 +1,67 @@
+package Benchmarks;
+
+import CAClassPackage.GridHistory;
+import CAClassPackage.StateGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks recording generations into a {@link GridHistory}, so their score is in generations recorded per second
+ */
+public class HistoryBenchmarks {
+    //Longest run whose count fits in 2 bytes, one more cell takes a third
+    private static final int TWO_BYTE_RUN = 16383;
+
+    public static List<Benchmark> create() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        //Rows of runs just long enough to need 3 byte counts, each after the fewest unchanged cells that end a run,
+        //which is the most a delta can take over the cells it covers. Read back before measuring, so a history that
+        //can't hold them fails instead of being scored
+        benchmarks.add(new Benchmark("history.record.longRuns", () -> {
+            int runLength = TWO_BYTE_RUN + 1;
+            StateGrid empty = new StateGrid(100, runLength + 3);
+            StateGrid runs = new StateGrid(100, runLength + 3);
+            for (int row = 0; row < runs.numRows; row++) {
+                for (int col = 0; col < runLength; col++) {
+                    runs.set(row, col, 1);
+                }
+            }
+
+            //No disk budget, so the oldest generations are dropped instead of spilled
+            GridHistory history = new GridHistory(runs.numRows, runs.numCols, GridHistory.DEFAULT_KEYFRAME_INTERVAL,
+                    GridHistory.DEFAULT_MEGABYTES << 20, 0);
+            StateGrid[] grids = {runs, empty};
+            for (int generation = 0; generation < 4; generation++) {
+                StateGrid grid = grids[generation & 1];
+                grid.setGeneration(generation);
+                history.record(grid);
+            }
+            for (int generation = 0; generation < 4; generation++) {
+                checkSame(history.seek(generation), grids[generation & 1]);
+            }
+
+            long[] generation = {4};
+            return () -> {
+                StateGrid grid = grids[(int) (generation[0] & 1)];
+                grid.setGeneration(generation[0]++);
+                history.record(grid);
+                return history.getLastGeneration();
+            };
+        }));
+
+        return benchmarks;
+    }
+
+    private static void checkSame(StateGrid read, StateGrid recorded) {
+        for (int row = 0; row < recorded.numRows; row++) {
+            for (int col = 0; col < recorded.numCols; col++) {
+                if (read.get(row, col) != recorded.get(row, col)) {
+                    throw new IllegalStateException("History read back generation " + recorded.getGeneration()
+                            + " wrong at " + row + ", " + col + ".");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import CAClassPackage.GridParser;
+import CAClassPackage.StateGrid;
+import Engines.RuleTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks reading rule files and initial states, so their score is in files parsed per second
+ */
+public class ParseBenchmarks {
+    /**
+     * @param sizes     amount of rows and cols of each initial state
+     * @param densities fraction of cells that start alive
+     * @param resources folder holding the automatas' input files
+     */
+    public static List<Benchmark> create(int[] sizes, double[] densities, File resources) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        benchmarks.add(new Benchmark("parse.langton.ruleTable", () -> {
+            File ruleTableFile = new File(resources, "langtonsLoop/rule_table.txt");
+            return () -> RuleTable.compile(ruleTableFile, 8, 0).numStates;
+        }));
+
+        for (int size : sizes) {
+            for (double density : densities) {
+                String[] params = {"size", Integer.toString(size), "density", Double.toString(density)};
+
+                benchmarks.add(new Benchmark("parse.life.file", () -> {
+                    File file = writeGrid(StepBenchmarks.randomGrid(size, size, density, 2));
+                    return () -> GridParser.readLifeFile(file).numRows;
+                }, params));
+                benchmarks.add(new Benchmark("parse.states.file", () -> {
+                    File file = writeGrid(StepBenchmarks.randomGrid(size, size, density, 8));
+                    return () -> GridParser.readStateFile(file, 8).numRows;
+                }, params));
+                benchmarks.add(new Benchmark("parse.elementary.row", () -> {
+                    StringBuilder row = new StringBuilder();
+                    for (byte state : StepBenchmarks.randomRow(size * size, density)) {
+                        row.append(state);
+                    }
+                    String input = row.toString();
+                    return () -> GridParser.parseElementaryRow(input).length;
+                }, params));
+            }
+        }
+
+        return benchmarks;
+    }
+
+    /**
+     * Writes a grid to a temporary file in the format GridParser reads
+     */
+    private static File writeGrid(StateGrid grid) throws IOException {
+        File file = File.createTempFile("grid", ".txt");
+        file.deleteOnExit();
+
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.println(grid.numRows + " " + grid.numCols);
+            StringBuilder row = new StringBuilder(grid.numCols);
+            for (int r = 0; r < grid.numRows; r++) {
+                row.setLength(0);
+                for (int c = 0; c < grid.numCols; c++) {
+                    row.append(grid.get(r, c));
+                }
+                out.println(row);
+            }
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,36 @@
+package Benchmarks;
+
+import CAClassPackage.PixelFrame;
+import CAClassPackage.StateGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks drawing a frame into an off-screen image, so their score is in frames per second
+ */
+public class RenderBenchmarks {
+    /**
+     * @param sizes     amount of rows and cols of each grid
+     * @param densities fraction of cells that aren't in state 0
+     */
+    public static List<Benchmark> create(int[] sizes, double[] densities) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        for (int size : sizes) {
+            for (double density : densities) {
+                benchmarks.add(new Benchmark("render.pixels", () -> {
+                    StateGrid grid = StepBenchmarks.randomGrid(size, size, density, 8);
+                    int[] palette = new int[8];
+                    for (int state = 0; state < palette.length; state++) {
+                        palette[state] = 0xFF000000 | state * 0x1F1F1F;
+                    }
+                    PixelFrame frame = new PixelFrame(size, size, palette);
+                    return () -> frame.draw(grid)[size * size - 1];
+                }, "size", Integer.toString(size), "density", Double.toString(density)));
+            }
+        }
+
+        return benchmarks;
+    }
+}
@@ -0,0 +1,176 @@
+package Benchmarks;
+
+import CAClassPackage.GridParser;
+import CAClassPackage.StateGrid;
+import Engines.ActiveTiles;
+import Engines.ChunkedGrid;
+import Engines.HashLife;
+import Engines.LifeRule;
+import Engines.PackedElementaryRow;
+import Engines.PackedLifeGrid;
+import Engines.PackedStateGrid;
+import Engines.ParallelStepper;
+import Engines.RuleTable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks stepping one generation of each automata, so their score is in generations per second
+ */
+public class StepBenchmarks {
+    //Seed for random grids, so every run measures the same grids
+    static final long SEED = 42;
+
+    /**
+     * @param sizes     amount of rows and cols of each grid
+     * @param densities fraction of cells that start alive
+     * @param resources folder holding the automatas' input files
+     */
+    public static List<Benchmark> create(int[] sizes, double[] densities, File resources) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        for (int size : sizes) {
+            for (double density : densities) {
+                String[] params = {"size", Integer.toString(size), "density", Double.toString(density)};
+
+                benchmarks.add(new Benchmark("step.life.packed", () -> {
+                    PackedLifeGrid life = PackedLifeGrid.fromStateGrid(randomGrid(size, size, density, 2));
+                    return () -> {
+                        life.step();
+                        return life.getGeneration();
+                    };
+                }, params));
+                benchmarks.add(new Benchmark("step.life.packedParallel", () -> {
+                    PackedLifeGrid life = PackedLifeGrid.fromStateGrid(randomGrid(size, size, density, 2));
+                    return () -> {
+                        life.step(ParallelStepper.getDefault());
+                        return life.getGeneration();
+                    };
+                }, params));
+                benchmarks.add(new Benchmark("step.life.byte", () -> {
+                    StateGrid grid = randomGrid(size, size, density, 2);
+                    return () -> {
+                        LifeRule.step(grid);
+                        return grid.getGeneration();
+                    };
+                }, params));
+                benchmarks.add(new Benchmark("step.life.chunked", () -> {
+                    ChunkedGrid chunked = ChunkedGrid.fromStateGrid(randomGrid(size, size, density, 2),
+                            ChunkedGrid.lifeKernel());
+                    return () -> {
+                        chunked.step();
+                        return chunked.getGeneration();
+                    };
+                }, params));
+                benchmarks.add(new Benchmark("step.life.hashLife", () -> {
+                    HashLife hashLife = HashLife.fromStateGrid(randomGrid(size, size, density, 2));
+                    return () -> {
+                        hashLife.advance(1);
+                        return hashLife.getGeneration();
+                    };
+                }, params));
+                //A row with as many cells as the 2D grids
+                benchmarks.add(new Benchmark("step.elementary.packed", () -> {
+                    PackedElementaryRow row = new PackedElementaryRow(30, randomRow(size * size, density));
+                    return () -> {
+                        row.step();
+                        return row.getGeneration();
+                    };
+                }, params));
+            }
+
+            //Rule tables run on copies of Langtons Loop, random states would only miss the rules
+            String[] params = {"size", Integer.toString(size)};
+            benchmarks.add(new Benchmark("step.langton.ruleTable", () -> {
+                RuleTable ruleTable = langtonRules(resources);
+                StateGrid grid = langtonGrid(resources, size);
+                return () -> {
+                    ruleTable.step(grid);
+                    return grid.getGeneration();
+                };
+            }, params));
+            benchmarks.add(new Benchmark("step.langton.ruleTableParallel", () -> {
+                RuleTable ruleTable = langtonRules(resources);
+                StateGrid grid = langtonGrid(resources, size);
+                return () -> {
+                    ruleTable.step(grid, ParallelStepper.getDefault());
+                    return grid.getGeneration();
+                };
+            }, params));
+            benchmarks.add(new Benchmark("step.langton.activeTiles", () -> {
+                RuleTable ruleTable = langtonRules(resources);
+                StateGrid grid = langtonGrid(resources, size);
+                ActiveTiles tiles = new ActiveTiles(size, size, ActiveTiles.DEFAULT_TILE_SIZE, ActiveTiles.DEFAULT_TILE_SIZE);
+                return () -> {
+                    ruleTable.step(grid, tiles, null);
+                    return grid.getGeneration();
+                };
+            }, params));
+            benchmarks.add(new Benchmark("step.langton.packed", () -> {
+                RuleTable ruleTable = langtonRules(resources);
+                PackedStateGrid packed = PackedStateGrid.fromStateGrid(langtonGrid(resources, size), 8);
+                return () -> {
+                    packed.step(ruleTable);
+                    return packed.getGeneration();
+                };
+            }, params));
+            benchmarks.add(new Benchmark("step.langton.packedParallel", () -> {
+                RuleTable ruleTable = langtonRules(resources);
+                PackedStateGrid packed = PackedStateGrid.fromStateGrid(langtonGrid(resources, size), 8);
+                return () -> {
+                    packed.step(ruleTable, ParallelStepper.getDefault());
+                    return packed.getGeneration();
+                };
+            }, params));
+        }
+
+        return benchmarks;
+    }
+
+    /**
+     * @return grid whose cells are each non-zero with a chance of density, in a random non-zero state
+     */
+    static StateGrid randomGrid(int numRows, int numCols, double density, int numStates) {
+        Random random = new Random(SEED);
+        StateGrid grid = new StateGrid(numRows, numCols);
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                if (random.nextDouble() < density) grid.set(row, col, 1 + random.nextInt(numStates - 1));
+            }
+        }
+
+        return grid;
+    }
+
+    static byte[] randomRow(int width, double density) {
+        Random random = new Random(SEED);
+        byte[] row = new byte[width];
+        for (int i = 0; i < width; i++) {
+            if (random.nextDouble() < density) row[i] = 1;
+        }
+
+        return row;
+    }
+
+    static RuleTable langtonRules(File resources) throws Exception {
+        return RuleTable.compile(new File(resources, "langtonsLoop/rule_table.txt"), 8, 0);
+    }
+
+    /**
+     * @return grid of the given size tiled with Langtons Loop's initial configuration
+     */
+    static StateGrid langtonGrid(File resources, int size) throws Exception {
+        StateGrid loop = GridParser.readStateFile(new File(resources, "langtonsLoop/init_config.txt"), 8);
+        StateGrid grid = new StateGrid(size, size);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                grid.set(row, col, loop.get(row % loop.numRows, col % loop.numCols));
+            }
+        }
+
+        return grid;
+    }
+}
@@ -0,0 +1,154 @@
+package CAClassPackage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Checkpoint of a running simulation, a grid and its generation plus the identity of the rule it was stepped with,
+ * so a run can only be resumed under the rule that made it.
+ * The file is GZIP compressed, and holds, as big-endian numbers:
+ * the magic number "CACP", the format version, the rule as UTF-8, the amount of rows, cols and states,
+ * the bits per cell and the generation. Then comes one run of packed cells per row, packed as in a {@link GridFile}.
+ * The GZIP trailer's CRC and length are checked when reading, so a checkpoint cut short by a crash is never resumed
+ */
+public class CheckpointFile {
+    public static final String EXTENSION = ".cackpt";
+    public static final int VERSION = 1;
+    //"CACP" in ASCII
+    private static final int MAGIC = 0x43414350;
+
+    /**
+     * Writes the current generation of a grid to a temporary file next to the checkpoint, which then replaces it
+     * in one move, so a crash while writing leaves any older checkpoint of the same name whole
+     *
+     * @param rule      identity of the rule the grid is stepped with
+     * @param numStates amount of states cells can be in
+     */
+    public static void write(File file, StateGrid grid, String rule, int numStates) throws IOException {
+        if (numStates < 1 || numStates > 256) {
+            throw new IllegalArgumentException("Amount of states must be in the range [1 - 256]");
+        }
+
+        final int bitsPerCell = GridFile.bitsPerCell(numStates);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            //Most of a grid is usually empty, which even the fastest level squeezes down
+            GZIPOutputStream gzip = new GZIPOutputStream(fileOut, 1 << 16) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(rule);
+            out.writeInt(grid.numRows);
+            out.writeInt(grid.numCols);
+            out.writeInt(numStates);
+            out.writeInt(bitsPerCell);
+            out.writeLong(grid.getGeneration());
+
+            byte[] cells = grid.getCells();
+            byte[] packed = new byte[(int) (((long) grid.numCols * bitsPerCell + 7) >>> 3)];
+            for (int row = 0; row < grid.numRows; row++) {
+                if (bitsPerCell == 8) {
+                    out.write(cells, grid.index(row, 0), grid.numCols);
+                } else {
+                    GridFile.pack(cells, grid.index(row, 0), grid.numCols, bitsPerCell, packed);
+                    out.write(packed);
+                }
+            }
+            //Finishes the GZIP stream without closing the file, so it can be synced before it's moved
+            out.flush();
+            gzip.finish();
+            fileOut.getFD().sync();
+            out.close();
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a checkpoint
+     *
+     * @param rule      identity of the rule the grid will be stepped with
+     * @param numStates amount of states cells can be in
+     * @return A StateGrid with the grid, at the generation it was saved at
+     * @throws IllegalInitialStateException If the file isn't a whole checkpoint, or was made with another rule
+     *                                      or amount of states
+     */
+    public static StateGrid read(File file, String rule, int numStates) throws IOException, IllegalInitialStateException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalInitialStateException("File isn't a checkpoint.");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalInitialStateException("Checkpoint version " + version + " isn't supported.");
+            }
+
+            String madeWith = in.readUTF();
+            if (!madeWith.equals(rule)) {
+                throw new IllegalInitialStateException("Checkpoint was made with the rule \"" + madeWith
+                        + "\", not \"" + rule + "\".");
+            }
+            int numRows = in.readInt();
+            int numCols = in.readInt();
+            int savedStates = in.readInt();
+            int bitsPerCell = in.readInt();
+            long generation = in.readLong();
+            if (numRows < 1 || numCols < 1 || savedStates != numStates || generation < 0
+                    || bitsPerCell != GridFile.bitsPerCell(savedStates)) {
+                throw new IllegalInitialStateException("Checkpoint has an invalid header.");
+            }
+
+            StateGrid grid = new StateGrid(numRows, numCols);
+            grid.setGeneration(generation);
+            byte[] cells = grid.getCells();
+            byte[] packed = new byte[(int) (((long) numCols * bitsPerCell + 7) >>> 3)];
+            //Cells can only hold invalid states if the bits per cell fit more states than the grid has
+            boolean checkStates = numStates < (1 << bitsPerCell);
+            for (int row = 0; row < numRows; row++) {
+                int offset = grid.index(row, 0);
+                if (bitsPerCell == 8) {
+                    in.readFully(cells, offset, numCols);
+                } else {
+                    in.readFully(packed);
+                    GridFile.unpack(packed, cells, offset, numCols, bitsPerCell);
+                }
+
+                for (int col = 0; checkStates && col < numCols; col++) {
+                    if ((cells[offset + col] & 0xFF) >= numStates) {
+                        throw new IllegalInitialStateException("Cell at " + row + ", " + col + " isn't a valid state.");
+                    }
+                }
+            }
+
+            //Reading to the end checks the GZIP trailer
+            if (in.read() != -1) {
+                throw new IllegalInitialStateException("Checkpoint is longer than its grid.");
+            }
+
+            return grid;
+        } catch (EOFException | ZipException e) {
+            throw new IllegalInitialStateException("Checkpoint " + file.getName() + " is cut short or corrupt.");
+        }
+    }
+}
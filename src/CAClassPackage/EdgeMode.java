@@ -0,0 +1,13 @@
+package CAClassPackage;
+
+/**
+ * ENUM representing how a grid treats the cells past its edges
+ */
+public enum EdgeMode {
+    //Edges wrap around to the opposite side of the grid
+    TOROIDAL,
+    //Cells past the edges are always in a fixed background state
+    FIXED,
+    //Cells past the edges mirror the cells on the edge
+    REFLECTING
+}
@@ -1,16 +1,39 @@
 package CAClassPackage;
 
-import CellTypes.Cell;
+import Engines.PackedElementaryRow;
+import Engines.SimulationLoop;
+import Engines.SimulationMetrics;
 
+import javafx.animation.AnimationTimer;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.image.ImageView;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
 /**
  * This class holds methods that Cellular Automatas can use for GUI implementation
  */
 public class GUIMethodPackage {
+    //Most generations a 1D space-time diagram keeps on screen
+    public static final int MAX_HISTORY_ROWS = 4096;
+    //System property that shows the metrics overlay when a window opens, it's toggled with the M key either way
+    public static final String METRICS_OVERLAY_PROPERTY = "ca.metricsOverlay";
+    //Key of the metrics overlay Label in the properties of Stages made by render()
+    private static final String METRICS_OVERLAY_KEY = "metricsOverlay";
+    //Time between updates of the metrics overlay, in nanoseconds
+    private static final long OVERLAY_INTERVAL = 250_000_000;
+
     /**
      * Draws prompt to screen for initial CA startups
      */
@@ -37,32 +60,324 @@ public class GUIMethodPackage {
     }
 
     /**
-     * Takes a gridPane and CellArray, and draws them to the screen
-     */
-    public static void renderFrame(GridPane gridPane, CellArray<? extends Cell> gridArray) {
-        //Clear grid
-        gridPane.getChildren().clear();
-
-        //Add cells to grid
-        for (int row = 0; row < gridArray.numRows; row++) {
-            for (int col = 0; col < gridArray.numCols; col++) {
-                gridPane.add(gridArray.get(row, col).getNode(), col, row);
-            }
-        }
-    }
-
-    /**
-     * Draws a GridPane onto the screen
+     * Draws a GridRenderer onto the screen, scaling the grid with the window.
+     * Metrics of the simulation drawn into it can be shown over the grid with the M key
      *
-     * @param title title of the Cellular Automata
+     * @param width  starting width of the grid
+     * @param height starting height of the grid
+     * @param title  title of the Cellular Automata
      */
-    public static Stage render(GridPane gridPane, String title) {
-        Scene scene = new Scene(gridPane);
+    public static Stage render(GridRenderer renderer, double width, double height, String title) {
+        ImageView view = renderer.getView();
+        Pane pane = new Pane(view);
+        pane.setPrefSize(width, height);
+        view.fitWidthProperty().bind(pane.widthProperty());
+        view.fitHeightProperty().bind(pane.heightProperty());
+
+        //Filled in by animate()
+        Label overlay = new Label();
+        overlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-text-fill: white; -fx-padding: 4;"
+                + " -fx-font-family: monospace;");
+        overlay.setMouseTransparent(true);
+        overlay.setVisible(Boolean.getBoolean(METRICS_OVERLAY_PROPERTY));
+        pane.getChildren().add(overlay);
+
+        Scene scene = new Scene(pane);
+        scene.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.M) overlay.setVisible(!overlay.isVisible());
+        });
         Stage primaryStage = new Stage();
         primaryStage.setScene(scene);
         primaryStage.setTitle(title);
+        primaryStage.getProperties().put(METRICS_OVERLAY_KEY, overlay);
         primaryStage.show();
 
         return primaryStage;
     }
+
+    /**
+     * Draws the newest snapshot of a simulation each frame, up to its frames per second target, and
+     * stops the simulation when the Stage is closed.
+     * The simulation's metrics are published over JMX under the Stage's title while it runs.
+     * If the loop keeps a {@link GridHistory}, past generations can be shown instead while the simulation carries on:
+     * the left and right arrow keys step back and forward, page up and down by 100 generations,
+     * Home goes to the oldest generation kept, End back to the live one, and a slider scrubs through them all
+     *
+     * @param onFrame run on the FX thread after each snapshot is drawn, or null
+     */
+    public static AnimationTimer animate(Stage stage, GridRenderer renderer, SimulationLoop loop,
+                                         Consumer<StateGrid> onFrame) {
+        SimulationMetrics metrics = loop.getMetrics();
+        metrics.register(stage.getTitle());
+        Label overlay = (Label) stage.getProperties().get(METRICS_OVERLAY_KEY);
+        Review review = (loop.getHistory() != null) ? new Review(stage, renderer, loop.getHistory()) : null;
+
+        AnimationTimer frameLoop = new AnimationTimer() {
+            private long lastFrame = 0;
+            private long lastOverlay = 0;
+
+            @Override
+            public void handle(long now) {
+                //Pulses come at the display rate, let a few percent of jitter through
+                if (now - lastFrame < 0.95e9 / loop.getFramesPerSecond()) return;
+
+                //A past generation stays on screen until the review ends, the slider still grows with the history
+                if (review != null && review.isActive()) {
+                    review.refresh();
+                    lastFrame = now;
+                    return;
+                }
+
+                StateGrid snapshot = loop.pollSnapshot();
+                if (snapshot == null) return;
+
+                long start = System.nanoTime();
+                renderer.render(snapshot);
+                if (onFrame != null) onFrame.accept(snapshot);
+                metrics.recordRender(System.nanoTime() - start);
+                lastFrame = now;
+                if (review != null) review.setLiveGeneration(snapshot.getGeneration());
+
+                if (overlay != null && overlay.isVisible() && now - lastOverlay >= OVERLAY_INTERVAL) {
+                    overlay.setText(metrics.summary());
+                    lastOverlay = now;
+                }
+            }
+        };
+
+        stage.setOnHidden(event -> {
+            frameLoop.stop();
+            loop.close();
+        });
+        frameLoop.start();
+        loop.start();
+
+        return frameLoop;
+    }
+
+    /**
+     * Draws a 1D Cellular Automata as a scrolling space-time diagram, one generation per frame.
+     * Only the newest generations are kept, so memory stays the same however long it runs
+     *
+     * @param palette     ARGB color of each cell state
+     * @param historyFile file every generation is streamed to, or null
+     * @param title       title of the Cellular Automata
+     */
+    public static Stage animateHistory(PackedElementaryRow row, int[] palette, File historyFile, String title) {
+        //Square diagram, as tall as the row is wide
+        final int capacity = Math.max(1, Math.min(row.width, MAX_HISTORY_ROWS));
+        HistoryBuffer history = new HistoryBuffer(row.width, capacity, palette);
+        HistoryRenderer renderer = new HistoryRenderer(row.width, capacity);
+        byte[] states = row.toStates();
+        history.append(states);
+        renderer.render(history);
+
+        HistoryWriter writer = null;
+        if (historyFile != null) {
+            try {
+                writer = new HistoryWriter(historyFile, row.width);
+                writer.write(states);
+            } catch (IOException e) {
+                Alert alert = new Alert(Alert.AlertType.WARNING, "Can't save history: " + e.getMessage());
+                alert.show();
+                writer = null;
+            }
+        }
+        final HistoryWriter historyWriter = writer;
+
+        //Show the diagram scaled up to the window
+        ImageView view = renderer.getView();
+        Pane pane = new Pane(view);
+        pane.setPrefSize(800, 800);
+        view.fitWidthProperty().bind(pane.widthProperty());
+        view.fitHeightProperty().bind(pane.heightProperty());
+        Stage stage = new Stage();
+        stage.setScene(new Scene(pane));
+        stage.setTitle(title);
+        stage.show();
+
+        AnimationTimer animation = new AnimationTimer() {
+            private HistoryWriter writer = historyWriter;
+
+            @Override
+            public void handle(long now) {
+                row.step();
+                row.copyStates(states);
+                history.append(states);
+                renderer.render(history);
+
+                if (writer != null) {
+                    try {
+                        writer.write(states);
+                    } catch (IOException e) {
+                        //Keep running without saving
+                        e.printStackTrace();
+                        closeQuietly(writer);
+                        writer = null;
+                    }
+                }
+            }
+
+            @Override
+            public void stop() {
+                super.stop();
+                if (writer != null) {
+                    closeQuietly(writer);
+                    writer = null;
+                }
+            }
+        };
+
+        stage.setOnHidden(event -> animation.stop());
+        animation.start();
+
+        return stage;
+    }
+
+    /**
+     * Shows past generations of a {@link GridHistory} in place of the live simulation
+     */
+    private static final class Review {
+        //Generations page up and down step by
+        static final int PAGE = 100;
+
+        private final Stage stage;
+        private final GridRenderer renderer;
+        private final GridHistory history;
+        //Along the bottom of the window, only shown while reviewing
+        private final Slider slider = new Slider();
+        private boolean active;
+        //Generation of the last live snapshot drawn
+        private long liveGeneration;
+        //Title the Stage had before the review, put back after it
+        private String liveTitle;
+
+        Review(Stage stage, GridRenderer renderer, GridHistory history) {
+            this.stage = stage;
+            this.renderer = renderer;
+            this.history = history;
+
+            slider.setVisible(false);
+            slider.setFocusTraversable(false);
+            slider.setBlockIncrement(1);
+            slider.valueProperty().addListener((observable, before, value) -> {
+                if (active) show(Math.round(value.doubleValue()));
+            });
+            if (stage.getScene().getRoot() instanceof Pane) {
+                Pane pane = (Pane) stage.getScene().getRoot();
+                slider.prefWidthProperty().bind(pane.widthProperty());
+                slider.layoutYProperty().bind(pane.heightProperty().subtract(slider.heightProperty()));
+                pane.getChildren().add(slider);
+            }
+            stage.getScene().addEventHandler(KeyEvent.KEY_PRESSED, event -> {
+                if (handle(event.getCode())) event.consume();
+            });
+        }
+
+        boolean isActive() {
+            return active;
+        }
+
+        void setLiveGeneration(long generation) {
+            liveGeneration = generation;
+        }
+
+        /**
+         * @return if the key is one of the review keys
+         */
+        private boolean handle(KeyCode key) {
+            long shown = active ? Math.round(slider.getValue()) : liveGeneration;
+            switch (key) {
+                case LEFT: {
+                    seek(shown - 1);
+                    return true;
+                }
+                case PAGE_UP: {
+                    seek(shown - PAGE);
+                    return true;
+                }
+                case HOME: {
+                    seek(history.getFirstGeneration());
+                    return true;
+                }
+                case RIGHT:
+                case PAGE_DOWN: {
+                    if (!active) return true;
+                    long next = shown + ((key == KeyCode.RIGHT) ? 1 : PAGE);
+                    //Stepping past the newest generation kept goes back to the live one
+                    if (next > history.getLastGeneration()) {
+                        stop();
+                    } else {
+                        seek(next);
+                    }
+                    return true;
+                }
+                case END: {
+                    if (active) stop();
+                    return true;
+                }
+                default: {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Starts reviewing if needed, and shows a generation, clamped to the ones kept
+         */
+        private void seek(long generation) {
+            if (history.getLastGeneration() < 0) return;
+            if (!active) {
+                liveTitle = stage.getTitle();
+                slider.setVisible(true);
+            }
+            //Set after the slider is stretched, which may move it, so only the generation asked for is shown
+            refresh();
+            active = true;
+            long clamped = Math.max(history.getFirstGeneration(), Math.min(generation, history.getLastGeneration()));
+            //Moving the slider shows the generation, unless it's already there
+            if (Math.round(slider.getValue()) == clamped) {
+                show(clamped);
+            } else {
+                slider.setValue(clamped);
+            }
+        }
+
+        /**
+         * Stretches the slider over the generations kept
+         */
+        void refresh() {
+            slider.setMin(history.getFirstGeneration());
+            slider.setMax(history.getLastGeneration());
+        }
+
+        private void show(long generation) {
+            try {
+                //The oldest generations may have been dropped since the slider was last stretched
+                StateGrid grid = history.seekClosest(generation);
+                if (grid == null) return;
+
+                renderer.render(grid);
+                stage.setTitle(liveTitle + " (generation " + grid.getGeneration() + " of " + history.getLastGeneration()
+                        + ", End to go back live)");
+            } catch (IOException e) {
+                e.printStackTrace();
+                stop();
+            }
+        }
+
+        private void stop() {
+            active = false;
+            slider.setVisible(false);
+            stage.setTitle(liveTitle);
+        }
+    }
+
+    private static void closeQuietly(HistoryWriter writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 }
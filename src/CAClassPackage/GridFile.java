@@ -0,0 +1,234 @@
+package CAClassPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary grid format, read and written through memory-mapped files instead of being parsed line by line.
+ * A 32 byte header holds, as big-endian numbers:
+ * the magic number "CAGR", the format version, the amount of rows, cols and states, the bits per cell
+ * and the generation. Then comes one run of packed cells per row, padded to a whole byte.
+ * Cells take 1, 2, 4 or 8 bits depending on the amount of states, with the first cell of each byte
+ * in its lowest bits
+ */
+public class GridFile {
+    public static final String EXTENSION = ".cagrid";
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 32;
+    //"CAGR" in ASCII
+    private static final int MAGIC = 0x43414752;
+    //Most bytes mapped at once, files larger than this are mapped a run of rows at a time
+    private static final int MAX_MAPPING = 1 << 28;
+
+    /**
+     * Header of a grid file
+     */
+    public static class Header {
+        public final int numRows;
+        public final int numCols;
+        public final int numStates;
+        public final int bitsPerCell;
+        public final long generation;
+
+        private Header(int numRows, int numCols, int numStates, long generation) {
+            this.numRows = numRows;
+            this.numCols = numCols;
+            this.numStates = numStates;
+            this.bitsPerCell = bitsPerCell(numStates);
+            this.generation = generation;
+        }
+
+        /**
+         * @return bytes each row of cells takes up
+         */
+        public long rowBytes() {
+            return ((long) numCols * bitsPerCell + 7) >>> 3;
+        }
+    }
+
+    /**
+     * @return if a file starts with the magic number of a grid file
+     */
+    public static boolean isGridFile(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            return channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return bits each cell takes up in a grid with an amount of states
+     */
+    public static int bitsPerCell(int numStates) {
+        if (numStates <= 2) return 1;
+        if (numStates <= 4) return 2;
+        if (numStates <= 16) return 4;
+        return 8;
+    }
+
+    public static Header readHeader(File file) throws IOException, IllegalInitialStateException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readHeader(channel);
+        }
+    }
+
+    /**
+     * Reads a grid file
+     *
+     * @param numStates amount of states cells can be in
+     * @return A StateGrid with the grid, at the generation it was saved at
+     * @throws IllegalInitialStateException If the file isn't a grid file, or holds more states than numStates
+     */
+    public static StateGrid read(File file, int numStates) throws IOException, IllegalInitialStateException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            if (header.numStates > numStates) {
+                throw new IllegalInitialStateException("Grid has " + header.numStates
+                        + " states, but only " + numStates + " are allowed.");
+            }
+            if (channel.size() != HEADER_BYTES + header.rowBytes() * header.numRows) {
+                throw new IllegalInitialStateException("Grid file is the wrong size for a "
+                        + header.numRows + " by " + header.numCols + " grid.");
+            }
+
+            StateGrid grid = new StateGrid(header.numRows, header.numCols);
+            grid.setGeneration(header.generation);
+            byte[] cells = grid.getCells();
+            byte[] packed = new byte[(int) header.rowBytes()];
+            int rowsPerMapping = (int) Math.max(1, MAX_MAPPING / header.rowBytes());
+            //Cells can only hold invalid states if the bits per cell fit more states than the grid has
+            boolean checkStates = header.numStates < (1 << header.bitsPerCell);
+
+            for (int fromRow = 0; fromRow < header.numRows; fromRow += rowsPerMapping) {
+                int toRow = Math.min(fromRow + rowsPerMapping, header.numRows);
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + fromRow * header.rowBytes(), (toRow - fromRow) * header.rowBytes());
+
+                for (int row = fromRow; row < toRow; row++) {
+                    int offset = grid.index(row, 0);
+                    if (header.bitsPerCell == 8) {
+                        //Whole bytes go straight into the grid
+                        mapping.get(cells, offset, header.numCols);
+                    } else {
+                        mapping.get(packed);
+                        unpack(packed, cells, offset, header.numCols, header.bitsPerCell);
+                    }
+
+                    for (int col = 0; checkStates && col < header.numCols; col++) {
+                        if ((cells[offset + col] & 0xFF) >= header.numStates) {
+                            throw new IllegalInitialStateException("Cell at " + row + ", " + col
+                                    + " isn't a valid state.");
+                        }
+                    }
+                }
+            }
+
+            return grid;
+        }
+    }
+
+    /**
+     * Writes the current generation of a grid, replacing the file if it exists
+     *
+     * @param numStates amount of states cells can be in
+     */
+    public static void write(File file, StateGrid grid, int numStates) throws IOException {
+        if (numStates < 1 || numStates > 256) {
+            throw new IllegalArgumentException("Amount of states must be in the range [1 - 256]");
+        }
+
+        Header header = new Header(grid.numRows, grid.numCols, numStates, grid.getGeneration());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            mapping.putInt(MAGIC).putInt(VERSION)
+                    .putInt(header.numRows).putInt(header.numCols)
+                    .putInt(header.numStates).putInt(header.bitsPerCell)
+                    .putLong(header.generation);
+
+            byte[] cells = grid.getCells();
+            byte[] packed = new byte[(int) header.rowBytes()];
+            int rowsPerMapping = (int) Math.max(1, MAX_MAPPING / header.rowBytes());
+
+            for (int fromRow = 0; fromRow < header.numRows; fromRow += rowsPerMapping) {
+                int toRow = Math.min(fromRow + rowsPerMapping, header.numRows);
+                mapping = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + fromRow * header.rowBytes(), (toRow - fromRow) * header.rowBytes());
+
+                for (int row = fromRow; row < toRow; row++) {
+                    if (header.bitsPerCell == 8) {
+                        mapping.put(cells, grid.index(row, 0), header.numCols);
+                    } else {
+                        pack(cells, grid.index(row, 0), header.numCols, header.bitsPerCell, packed);
+                        mapping.put(packed);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException, IllegalInitialStateException {
+        if (channel.size() < HEADER_BYTES) {
+            throw new IllegalInitialStateException("File is too short to be a grid file.");
+        }
+
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if (mapping.getInt() != MAGIC) {
+            throw new IllegalInitialStateException("File isn't a grid file.");
+        }
+        int version = mapping.getInt();
+        if (version != VERSION) {
+            throw new IllegalInitialStateException("Grid file version " + version + " isn't supported.");
+        }
+
+        int numRows = mapping.getInt();
+        int numCols = mapping.getInt();
+        int numStates = mapping.getInt();
+        int bitsPerCell = mapping.getInt();
+        long generation = mapping.getLong();
+        if (numRows < 1 || numCols < 1 || numStates < 1 || numStates > 256 || generation < 0) {
+            throw new IllegalInitialStateException("Grid file has an invalid header.");
+        }
+
+        Header header = new Header(numRows, numCols, numStates, generation);
+        if (header.bitsPerCell != bitsPerCell) {
+            throw new IllegalInitialStateException("Grid file has an invalid header.");
+        }
+
+        return header;
+    }
+
+    /**
+     * Packs a run of cells, the first cell of each byte in its lowest bits
+     */
+    static void pack(byte[] cells, int offset, int count, int bitsPerCell, byte[] packed) {
+        final int cellsPerByte = 8 / bitsPerCell;
+        for (int i = 0, cell = 0; i < packed.length; i++) {
+            int bits = 0;
+            for (int slot = 0; slot < cellsPerByte && cell < count; slot++, cell++) {
+                bits |= cells[offset + cell] << (slot * bitsPerCell);
+            }
+            packed[i] = (byte) bits;
+        }
+    }
+
+    /**
+     * Unpacks a run of cells packed by {@link #pack}
+     */
+    static void unpack(byte[] packed, byte[] cells, int offset, int count, int bitsPerCell) {
+        final int cellsPerByte = 8 / bitsPerCell;
+        final int mask = (1 << bitsPerCell) - 1;
+        for (int i = 0, cell = 0; i < packed.length; i++) {
+            int bits = packed[i];
+            for (int slot = 0; slot < cellsPerByte && cell < count; slot++, cell++) {
+                cells[offset + cell] = (byte) ((bits >>> (slot * bitsPerCell)) & mask);
+            }
+        }
+    }
+}
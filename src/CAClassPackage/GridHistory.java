@@ -0,0 +1,522 @@
+package CAClassPackage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every generation of a 2D run, kept so any of them can be seen again without re-running the simulation.
+ * Generations are grouped into segments, each starting with a keyframe of the whole grid followed by deltas of
+ * what changed each generation. Both are stored as runs: the amount of cells that didn't change, then the amount
+ * that did followed by each one's old state XOR its new state, a keyframe being the changes from an empty grid.
+ * As XOR undoes itself, a delta steps a generation forwards or backwards, so stepping back costs one delta.
+ * Once the segments in memory pass a budget, the oldest are spilled to a temporary file and read back when seeked to.
+ * The file is used as a ring no larger than a disk budget, so once it's full the oldest segments are dropped.
+ * It's deleted as soon as it's opened where the OS allows it, so it's freed even if the JVM crashes
+ */
+public class GridHistory implements Closeable {
+    //System property that turns on keeping the history of 2D runs when "true", it's off by default as it unpacks
+    //and encodes every generation
+    public static final String HISTORY_PROPERTY = "ca.history";
+    //System property setting the megabytes of history kept in memory before spilling to disk
+    public static final String MEGABYTES_PROPERTY = "ca.historyMegabytes";
+    //System property setting the megabytes of history spilled to disk before the oldest generations are dropped
+    public static final String DISK_MEGABYTES_PROPERTY = "ca.historyDiskMegabytes";
+    //System property setting the generations in each segment, one keyframe each
+    public static final String KEYFRAME_INTERVAL_PROPERTY = "ca.historyKeyframeInterval";
+    public static final long DEFAULT_MEGABYTES = 64;
+    public static final long DEFAULT_DISK_MEGABYTES = 1024;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+    //Reads 8 cells as one long
+    private static final VarHandle EIGHT_CELLS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    //Unchanged cells a run of changes takes in before it ends, shorter gaps cost less as part of the run
+    private static final int MIN_GAP = 3;
+
+    public final int numRows;
+    public final int numCols;
+    private final int keyframeInterval;
+    private final long memoryBudget;
+    private final long diskBudget;
+    private final List<Segment> segments = new ArrayList<>();
+    //Bytes of segment data held in memory
+    private long memoryBytes;
+    //Temporary file spilled segments are written to in a ring, opened on the first spill
+    private File spillFile;
+    private FileChannel spill;
+    //Offset the next spilled segment is written at, and bytes of the segments spilled and still kept
+    private long spillOffset;
+    private long spilledBytes;
+
+    //Cells of the newest generation and the one being recorded, without a halo, only touched by the recorder
+    private byte[] previous;
+    private byte[] current;
+    //Runs of the generation being recorded, large enough for any grid
+    private final byte[] encoded;
+
+    //Generation the last seek ended at, and its cells, so nearby seeks only apply a few deltas
+    private Segment cursorSegment;
+    private int cursorFrame;
+    private final byte[] cursor;
+    //Data of the last spilled segment read back
+    private Segment loadedSegment;
+    private byte[] loadedData;
+
+    /**
+     * Generations from firstGeneration on, each frame's runs at frameStarts[frame]
+     */
+    private static final class Segment {
+        final long firstGeneration;
+        int frames;
+        int[] frameStarts;
+        //Null once spilled
+        byte[] data;
+        int length;
+        long spillOffset = -1;
+
+        Segment(long firstGeneration, int frames, int capacity) {
+            this.firstGeneration = firstGeneration;
+            frameStarts = new int[frames + 1];
+            data = new byte[capacity];
+        }
+
+        long lastGeneration() {
+            return firstGeneration + frames - 1;
+        }
+    }
+
+    /**
+     * @param keyframeInterval generations in each segment, one keyframe each
+     * @param memoryBudget     bytes of history kept in memory before the oldest segments are spilled to disk
+     * @param diskBudget       bytes of history spilled to disk before the oldest segments are dropped
+     */
+    public GridHistory(int numRows, int numCols, int keyframeInterval, long memoryBudget, long diskBudget) {
+        if (keyframeInterval < 1) throw new IllegalArgumentException("Keyframe interval must be at least 1.");
+        if (memoryBudget < 0 || diskBudget < 0) throw new IllegalArgumentException("Budgets can't be negative.");
+
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.keyframeInterval = keyframeInterval;
+        this.memoryBudget = memoryBudget;
+        this.diskBudget = diskBudget;
+        int cells = numRows * numCols;
+        previous = new byte[cells];
+        current = new byte[cells];
+        cursor = new byte[cells];
+        encoded = new byte[maxEncodedLength(cells)];
+    }
+
+    /**
+     * Creates a history set by {@link #HISTORY_PROPERTY}, {@link #MEGABYTES_PROPERTY},
+     * {@link #DISK_MEGABYTES_PROPERTY} and {@link #KEYFRAME_INTERVAL_PROPERTY}
+     *
+     * @return the history, or null if it isn't turned on
+     */
+    public static GridHistory fromProperties(int numRows, int numCols) {
+        if (!Boolean.getBoolean(HISTORY_PROPERTY)) return null;
+
+        return new GridHistory(numRows, numCols,
+                Math.max(1, Integer.getInteger(KEYFRAME_INTERVAL_PROPERTY, DEFAULT_KEYFRAME_INTERVAL)),
+                Math.max(0, Long.getLong(MEGABYTES_PROPERTY, DEFAULT_MEGABYTES)) << 20,
+                Math.max(0, Long.getLong(DISK_MEGABYTES_PROPERTY, DEFAULT_DISK_MEGABYTES)) << 20);
+    }
+
+    /**
+     * Adds the current generation of a grid as the newest generation.
+     * Should be called from one thread, each generation following the last one recorded
+     *
+     * @throws IllegalArgumentException If the grid is another size, or isn't the generation after the last one
+     */
+    public void record(StateGrid grid) {
+        if (grid.numRows != numRows || grid.numCols != numCols) {
+            throw new IllegalArgumentException("Grid must be " + numRows + " by " + numCols + ".");
+        }
+
+        Segment last;
+        synchronized (this) {
+            last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        }
+        if (last != null && grid.getGeneration() != last.lastGeneration() + 1) {
+            throw new IllegalArgumentException("Generation " + grid.getGeneration() + " doesn't follow generation "
+                    + last.lastGeneration() + ".");
+        }
+
+        byte[] cells = grid.getCells();
+        for (int row = 0; row < numRows; row++) {
+            System.arraycopy(cells, grid.index(row, 0), current, row * numCols, numCols);
+        }
+        boolean keyframe = last == null || last.frames == keyframeInterval;
+        int length = encodeRuns(current, keyframe ? null : previous, encoded);
+        byte[] temp = previous;
+        previous = current;
+        current = temp;
+
+        synchronized (this) {
+            if (keyframe) {
+                if (last != null) trim(last);
+                last = new Segment(grid.getGeneration(), keyframeInterval, Math.max(length * 2, 1024));
+                segments.add(last);
+                memoryBytes += last.data.length;
+            }
+            append(last, length);
+            spillOverBudget();
+        }
+    }
+
+    private void append(Segment segment, int length) {
+        if (segment.length + length > segment.data.length) {
+            int capacity = Math.max(segment.length + length, segment.data.length * 2);
+            memoryBytes += capacity - segment.data.length;
+            segment.data = Arrays.copyOf(segment.data, capacity);
+        }
+
+        System.arraycopy(encoded, 0, segment.data, segment.length, length);
+        segment.frameStarts[segment.frames] = segment.length;
+        segment.length += length;
+        segment.frameStarts[++segment.frames] = segment.length;
+    }
+
+    /**
+     * Shrinks a finished segment's data to what it holds
+     */
+    private void trim(Segment segment) {
+        if (segment.data == null || segment.data.length == segment.length) return;
+
+        memoryBytes -= segment.data.length - segment.length;
+        segment.data = Arrays.copyOf(segment.data, segment.length);
+    }
+
+    /**
+     * Spills the oldest finished segments to disk until the ones in memory fit the budget.
+     * Segments are written after the last one spilled, wrapping to the start of the file at the disk budget, and any
+     * older segments where one is written are dropped. If the disk can't take one it's dropped too.
+     * Only ever dropping the oldest segments keeps the history without gaps
+     */
+    private void spillOverBudget() {
+        for (int i = 0; i < segments.size() - 1 && memoryBytes > memoryBudget; i++) {
+            Segment segment = segments.get(i);
+            if (segment.data == null) continue;
+
+            long from = spillOffset;
+            if (from + segment.length > diskBudget) from = 0;
+            long to = from + segment.length;
+            if (to > diskBudget) {
+                //Too large to ever be spilled
+                i -= dropThrough(segment);
+                continue;
+            }
+
+            //The segments in the way are always the oldest, found from where the last spill ended
+            while (segments.get(0) != segment && segments.get(0).spillOffset >= 0
+                    && overlaps(segments.get(0), spillOffset, from, to)) {
+                i -= dropThrough(segments.get(0));
+            }
+
+            try {
+                if (spill == null) {
+                    spillFile = File.createTempFile("ca-history", ".tmp");
+                    spill = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    //The open channel keeps the file readable, and the OS frees it once the JVM exits however it does
+                    if (!spillFile.delete()) spillFile.deleteOnExit();
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(segment.data, 0, segment.length);
+                while (buffer.hasRemaining()) {
+                    spill.write(buffer, from + buffer.position());
+                }
+            } catch (IOException e) {
+                System.err.println("Couldn't spill history to disk: " + e.getMessage());
+                i -= dropThrough(segment);
+                continue;
+            }
+
+            segment.spillOffset = from;
+            spillOffset = to;
+            spilledBytes += segment.length;
+            memoryBytes -= segment.data.length;
+            segment.data = null;
+        }
+    }
+
+    /**
+     * @param end  where the last spill ended
+     * @param from start of the range a segment is about to be written to
+     * @param to   end of that range
+     * @return if a spilled segment lies in the range, or in the end of the file skipped by wrapping around to it
+     */
+    private boolean overlaps(Segment segment, long end, long from, long to) {
+        long segmentEnd = segment.spillOffset + segment.length;
+        return (segment.spillOffset < to && segmentEnd > from) || (from < end && segmentEnd > end);
+    }
+
+    /**
+     * Drops a segment and every older one
+     *
+     * @return amount of segments dropped
+     */
+    private int dropThrough(Segment segment) {
+        int count = segments.indexOf(segment) + 1;
+        System.err.println("History is over its budget, dropping generations "
+                + segments.get(0).firstGeneration + " - " + segment.lastGeneration() + ".");
+        for (Segment dropped : segments.subList(0, count)) {
+            if (dropped.data != null) memoryBytes -= dropped.data.length;
+            if (dropped.spillOffset >= 0) spilledBytes -= dropped.length;
+            if (dropped == cursorSegment) cursorSegment = null;
+            if (dropped == loadedSegment) {
+                loadedSegment = null;
+                loadedData = null;
+            }
+        }
+        segments.subList(0, count).clear();
+
+        return count;
+    }
+
+    /**
+     * @return oldest generation kept, -1 if none have been recorded
+     */
+    public synchronized long getFirstGeneration() {
+        return segments.isEmpty() ? -1 : segments.get(0).firstGeneration;
+    }
+
+    /**
+     * @return newest generation kept, -1 if none have been recorded
+     */
+    public synchronized long getLastGeneration() {
+        return segments.isEmpty() ? -1 : segments.get(segments.size() - 1).lastGeneration();
+    }
+
+    /**
+     * @return bytes of history held in memory
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return bytes of history spilled to disk
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Rebuilds a generation, from the generation last seeked to if it's in the same segment and nearer than
+     * the segment's keyframe
+     *
+     * @return new grid holding the generation
+     * @throws IllegalArgumentException If the generation isn't kept
+     * @throws IOException              If the generation was spilled to disk and can't be read back
+     */
+    public synchronized StateGrid seek(long generation) throws IOException {
+        int index = segmentOf(generation);
+        if (index < 0) {
+            throw new IllegalArgumentException("Generation " + generation + " isn't kept, only "
+                    + getFirstGeneration() + " - " + getLastGeneration() + " are.");
+        }
+
+        Segment segment = segments.get(index);
+        byte[] data = dataOf(segment);
+        int frame = (int) (generation - segment.firstGeneration);
+        if (cursorSegment != segment || Math.abs(frame - cursorFrame) > frame) {
+            Arrays.fill(cursor, (byte) 0);
+            applyRuns(data, segment.frameStarts[0], segment.frameStarts[1], cursor);
+            cursorSegment = segment;
+            cursorFrame = 0;
+        }
+        //The delta of each frame turns the generation before it into it, and back again
+        for (; cursorFrame < frame; cursorFrame++) {
+            applyRuns(data, segment.frameStarts[cursorFrame + 1], segment.frameStarts[cursorFrame + 2], cursor);
+        }
+        for (; cursorFrame > frame; cursorFrame--) {
+            applyRuns(data, segment.frameStarts[cursorFrame], segment.frameStarts[cursorFrame + 1], cursor);
+        }
+
+        StateGrid grid = new StateGrid(numRows, numCols);
+        byte[] cells = grid.getCells();
+        for (int row = 0; row < numRows; row++) {
+            System.arraycopy(cursor, row * numCols, cells, grid.index(row, 0), numCols);
+        }
+        grid.setGeneration(generation);
+
+        return grid;
+    }
+
+    /**
+     * Rebuilds the generation kept that's closest to a generation, for seeking while the oldest generations may be
+     * dropped at any time
+     *
+     * @return new grid holding the generation, or null if none have been recorded
+     * @throws IOException If the generation was spilled to disk and can't be read back
+     */
+    public synchronized StateGrid seekClosest(long generation) throws IOException {
+        if (segments.isEmpty()) return null;
+
+        return seek(Math.max(getFirstGeneration(), Math.min(generation, getLastGeneration())));
+    }
+
+    /**
+     * @return index of the segment holding a generation, or -1 if it isn't kept
+     */
+    private int segmentOf(long generation) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Segment segment = segments.get(middle);
+            if (generation < segment.firstGeneration) {
+                high = middle - 1;
+            } else if (generation > segment.lastGeneration()) {
+                low = middle + 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return data of a segment, read back from disk if it was spilled
+     */
+    private byte[] dataOf(Segment segment) throws IOException {
+        if (segment.data != null) return segment.data;
+        if (loadedSegment == segment) return loadedData;
+
+        ByteBuffer buffer = ByteBuffer.allocate(segment.length);
+        while (buffer.hasRemaining()) {
+            if (spill.read(buffer, segment.spillOffset + buffer.position()) < 0) {
+                throw new IOException("History spill file is shorter than expected.");
+            }
+        }
+        loadedSegment = segment;
+        loadedData = buffer.array();
+
+        return loadedData;
+    }
+
+    /**
+     * Writes the cells that differ between two generations as runs
+     *
+     * @param before cells of the generation before, or null to write every non-zero cell
+     * @return amount of bytes written
+     */
+    static int encodeRuns(byte[] now, byte[] before, byte[] encoded) {
+        final int n = now.length;
+        int out = 0;
+        //End of the last run of changes
+        int end = 0;
+        int i = 0;
+
+        while (i < n) {
+            //Skip unchanged cells, 8 at a time where possible
+            while (i + 8 <= n && changes(now, before, i) == 0) {
+                i += 8;
+            }
+            while (i < n && change(now, before, i) == 0) {
+                ++i;
+            }
+            if (i == n) break;
+
+            //Take in cells until MIN_GAP unchanged ones in a row
+            int from = i;
+            int gap = 0;
+            while (i < n && gap < MIN_GAP) {
+                gap = (change(now, before, i) == 0) ? gap + 1 : 0;
+                ++i;
+            }
+            int to = i - gap;
+
+            out = putVarint(encoded, out, from - end);
+            out = putVarint(encoded, out, to - from);
+            for (int cell = from; cell < to; cell++) {
+                encoded[out++] = (byte) change(now, before, cell);
+            }
+            end = to;
+        }
+
+        return out;
+    }
+
+    /**
+     * Most bytes {@link #encodeRuns} can write for a grid.
+     * Each run after the first follows a gap of at least MIN_GAP unchanged cells, whose 1 byte gap count leaves
+     * 2 bytes for its run count before the run takes more bytes than the cells it covers. Only runs of 16384 or more
+     * cells need longer counts, up to 3 more bytes, and the first run has no gap to pay for its 2 counts of 5 bytes
+     */
+    static int maxEncodedLength(int cells) {
+        return cells + 5 * (cells / (16384 + MIN_GAP) + 2);
+    }
+
+    private static long changes(byte[] now, byte[] before, int i) {
+        long cells = (long) EIGHT_CELLS.get(now, i);
+        return (before == null) ? cells : cells ^ (long) EIGHT_CELLS.get(before, i);
+    }
+
+    private static int change(byte[] now, byte[] before, int i) {
+        return (before == null) ? now[i] : now[i] ^ before[i];
+    }
+
+    private static int putVarint(byte[] into, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            into[offset++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        into[offset++] = (byte) value;
+
+        return offset;
+    }
+
+    /**
+     * XORs runs written by {@link #encodeRuns} into cells
+     *
+     * @param from offset of the first byte of the runs
+     * @param to   offset after the last byte of the runs
+     */
+    static void applyRuns(byte[] data, int from, int to, byte[] cells) {
+        int cell = 0;
+        int i = from;
+        while (i < to) {
+            int skip = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[i++];
+                skip |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            int count = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[i++];
+                count |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+
+            cell += skip;
+            for (int end = cell + count; cell < end; cell++) {
+                cells[cell] ^= data[i++];
+            }
+        }
+    }
+
+    /**
+     * Deletes the spill file, the history can't be seeked afterwards
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        segments.clear();
+        cursorSegment = null;
+        loadedSegment = null;
+        loadedData = null;
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            if (!spillFile.delete() && spillFile.exists()) spillFile.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package CAClassPackage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Scanner;
+
+/**
+ * This class holds methods for parsing the text formats Cellular Automatas are loaded from.
+ * Nothing in here touches the GUI, so any engine can use it
+ */
+public class GridParser {
+    /**
+     * Reads a Game Of Life file, whose first line holds the amount of rows and columns,
+     * followed by one line of 1's and 0's per row. Binary {@link GridFile}s and {@link RleReader} patterns
+     * are read too
+     *
+     * @return A StateGrid with the parsed 2D grid
+     */
+    public static StateGrid readLifeFile(File file) throws IOException, IllegalInitialStateException {
+        if (GridFile.isGridFile(file)) return GridFile.read(file, 2);
+        if (file.getName().endsWith(RleReader.EXTENSION)) return RleReader.read(file);
+
+        try (Scanner fin = new Scanner(new FileInputStream(file))) {
+            //Reading in first two integer values
+            Scanner scan = new Scanner(fin.nextLine());
+            int numRows = scan.nextInt();
+            int numCols = scan.nextInt();
+
+            //Read in each line of grid
+            StringBuilder grid = new StringBuilder();
+            while (fin.hasNextLine()) {
+                grid.append(fin.nextLine()).append("\n");
+            }
+
+            return parseLifeGrid(grid.toString(), numRows, numCols);
+        }
+    }
+
+    /**
+     * Attempts to parse the initial grid into 1's and 0's
+     *
+     * @param input    Unparsed input from user
+     * @param rowCount Amount of rows the grid should be
+     * @param colCount Amount of columns the grid should be
+     * @return A StateGrid with the parsed 2D grid
+     * @throws IllegalInitialStateException If the grid has an invalid amount of rows/cols, or if it contains
+     *                                      anything other than a 1 or a 0.
+     */
+    public static StateGrid parseLifeGrid(String input, int rowCount, int colCount)
+            throws IllegalInitialStateException {
+
+        String[] unparsedList = input.split("\\n");
+
+
+        //Check if valid amount of rows
+        if (unparsedList.length != rowCount) {
+            throw new IllegalInitialStateException("Must enter valid amount of rows in initial state grid.");
+        }
+
+        //Set up grid
+        StateGrid initialState = new StateGrid(rowCount, colCount);
+
+        //Start parsing
+        int rowIndex = 0;
+        for (String col : unparsedList) {
+            //Check if valid amount of columns
+            if (col.length() != colCount) {
+                throw new IllegalInitialStateException("Must enter valid amount of columns in initial state grid.");
+            }
+
+            int colIndex = 0;
+            for (char character : col.toCharArray()) {
+                //If not 1 or 0, this isn't a valid cell state
+                if (!(character == '1' || character == '0')) {
+                    throw new IllegalInitialStateException("Initial state must only consist of 1's and 0's.");
+                }
+
+
+                initialState.set(rowIndex, colIndex, character - '0');
+
+                ++colIndex;
+            }
+            ++rowIndex;
+        }
+
+        return initialState;
+    }
+
+    /**
+     * Reads a multi-state grid file, such as Langtons Loop's initial configuration, whose first line holds
+     * the amount of rows and columns, followed by one line of digits per row. Binary {@link GridFile}s are read too
+     *
+     * @param numStates amount of states cells can be in
+     * @return A StateGrid with the parsed 2D grid
+     */
+    public static StateGrid readStateFile(File file, int numStates) throws IOException, IllegalInitialStateException {
+        if (GridFile.isGridFile(file)) return GridFile.read(file, numStates);
+
+        try (Scanner fin = new Scanner(new FileInputStream(file))) {
+            //Reading in first two integer values
+            Scanner scan = new Scanner(fin.nextLine());
+            int numRows = scan.nextInt();
+            int numCols = scan.nextInt();
+
+            //Read in each line of grid
+            StringBuilder grid = new StringBuilder();
+            while (fin.hasNextLine()) {
+                grid.append(fin.nextLine()).append("\n");
+            }
+
+            StateGrid initialState = parseStateGrid(grid.toString(), numStates);
+            if (initialState.numRows != numRows || initialState.numCols != numCols) {
+                throw new IllegalInitialStateException("Grid must be " + numRows + " by " + numCols + ".");
+            }
+
+            return initialState;
+        }
+    }
+
+    /**
+     * Parses a grid with one line of digits per row, each digit being the state of a cell
+     *
+     * @param numStates amount of states cells can be in
+     * @return A StateGrid with the parsed 2D grid
+     * @throws IllegalInitialStateException If the rows aren't the same length, or a cell isn't a valid state
+     */
+    public static StateGrid parseStateGrid(String input, int numStates) throws IllegalInitialStateException {
+        String[] unparsedList = input.split("\\n");
+
+        //Check if valid amount of rows
+        if (unparsedList.length < 2) {
+            throw new IllegalInitialStateException("Initial state must have at least 2 rows.");
+        }
+
+        final int numRows = unparsedList.length;
+        final int numCols = unparsedList[0].length();
+
+        //Set up grid
+        StateGrid initialState = new StateGrid(numRows, numCols);
+
+        int rowIndex = 0;
+        for (String col : unparsedList) {
+            //Check if valid amount of columns
+            if (col.length() != numCols) {
+                throw new IllegalInitialStateException("Must enter valid amount of columns in initial state grid.");
+            }
+
+            int colIndex = 0;
+            for (char character : col.toCharArray()) {
+                //Try to parse each Cell's state
+                int state = Character.digit(character, Character.MAX_RADIX);
+
+                if (state < 0 || state >= numStates) {
+                    throw new IllegalInitialStateException("Must enter valid cell states.");
+                }
+
+                //Set each cell's state
+                initialState.set(rowIndex, colIndex, state);
+
+                ++colIndex;
+            }
+            ++rowIndex;
+        }
+
+        return initialState;
+    }
+
+    /**
+     * Parses an 8-bit rule, as written in the first line of an Elementary CA file, into its rule number.
+     * The first bit is the output for neighborhood "111", the last for "000"
+     */
+    public static int parseRuleBits(String input) throws IllegalInitialStateException {
+        if (input.length() != 8) {
+            throw new IllegalInitialStateException("Rule must be exactly 8 bits.");
+        }
+
+        int ruleNum = 0;
+        for (char character : input.toCharArray()) {
+            if (!(character == '1' || character == '0')) {
+                throw new IllegalInitialStateException("Rule must only consist of 1's and 0's.");
+            }
+            ruleNum = (ruleNum << 1) | (character - '0');
+        }
+
+        return ruleNum;
+    }
+
+    /**
+     * Takes in input and returns the state of each cell in a row
+     *
+     * @param input unparsed initial state
+     * @return state of each cell, 0 or 1
+     */
+    public static byte[] parseElementaryRow(String input) throws IllegalInitialStateException {
+        byte[] initialState = new byte[input.length()];
+
+        for (int i = 0; i < initialState.length; i++) {
+            char character = input.charAt(i);
+
+            //If cell is '1' it's Alive, otherwise if it's '0' it's Dead
+            if (!(character == '1' || character == '0')) {
+                throw new IllegalInitialStateException();
+            }
+            initialState[i] = (byte) (character - '0');
+        }
+
+        return initialState;
+    }
+}
@@ -0,0 +1,64 @@
+package CAClassPackage;
+
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws a StateGrid into an image with one pixel per cell, shown in a single ImageView that is scaled up
+ * to the window. The scene graph holds one node however large the grid is, and each frame is one
+ * palette lookup per cell followed by a single {@link javafx.scene.image.PixelWriter#setPixels} call
+ */
+public class GridRenderer {
+    public final int numRows;
+    public final int numCols;
+    private final WritableImage image;
+    private final ImageView view;
+    //Pixels of the frame being drawn
+    private final PixelFrame frame;
+
+    /**
+     * @param palette color of each cell state
+     */
+    public GridRenderer(int numRows, int numCols, Color[] palette) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        image = new WritableImage(numCols, numRows);
+
+        int[] argbPalette = new int[palette.length];
+        for (int state = 0; state < palette.length; state++) {
+            argbPalette[state] = toArgb(palette[state]);
+        }
+        frame = new PixelFrame(numRows, numCols, argbPalette);
+
+        //Keep cells as sharp squares when scaled up
+        view = new ImageView(image);
+        view.setSmooth(false);
+    }
+
+    /**
+     * @return view showing the grid, its fit size sets how big the grid is drawn
+     */
+    public ImageView getView() {
+        return view;
+    }
+
+    /**
+     * Draws the current state of a grid the same size as this renderer
+     */
+    public void render(StateGrid grid) {
+        image.getPixelWriter().setPixels(0, 0, numCols, numRows,
+                PixelFormat.getIntArgbInstance(), frame.draw(grid), 0, numCols);
+    }
+
+    /**
+     * @return color packed into an int, with 8 bits each of alpha, red, green and blue
+     */
+    private static int toArgb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24
+                | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+    }
+}
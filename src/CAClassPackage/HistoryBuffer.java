@@ -0,0 +1,78 @@
+package CAClassPackage;
+
+/**
+ * Space-time diagram of a 1D Cellular Automata, holding the newest generations as ARGB scanlines in a
+ * fixed amount of memory. Rows are kept in a circular buffer, so once it's full each new generation
+ * overwrites the oldest one, and the diagram scrolls up
+ */
+public class HistoryBuffer {
+    public final int width;
+    //Most generations kept
+    public final int capacity;
+    //ARGB color of each cell state, indexed by state
+    private final int[] palette;
+    //Rows of pixels, row slot * width is the start of each
+    private final int[] pixels;
+    //Slot the next generation is written to
+    private int nextSlot;
+    private long rowCount;
+
+    /**
+     * @param width    amount of cells in each generation
+     * @param capacity most generations kept
+     * @param palette  ARGB color of each cell state
+     */
+    public HistoryBuffer(int width, int capacity, int[] palette) {
+        if (width < 1 || capacity < 1) {
+            throw new IllegalArgumentException("History must be at least 1 cell wide and 1 generation tall.");
+        }
+
+        this.width = width;
+        this.capacity = capacity;
+        this.palette = palette.clone();
+        pixels = new int[width * capacity];
+    }
+
+    /**
+     * Adds a generation as the newest row, dropping the oldest one if full
+     *
+     * @param states state of each cell, at least width long
+     */
+    public void append(byte[] states) {
+        int offset = nextSlot * width;
+        for (int i = 0; i < width; i++) {
+            pixels[offset + i] = palette[states[i]];
+        }
+
+        nextSlot = (nextSlot + 1 == capacity) ? 0 : nextSlot + 1;
+        ++rowCount;
+    }
+
+    /**
+     * @return amount of generations appended since the buffer was made
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return amount of generations currently kept
+     */
+    public int getVisibleRows() {
+        return (int) Math.min(rowCount, capacity);
+    }
+
+    /**
+     * @return slot of the oldest generation kept, the following slots, wrapping around, are newer
+     */
+    public int getOldestSlot() {
+        return (rowCount < capacity) ? 0 : nextSlot;
+    }
+
+    /**
+     * @return the circular buffer of rows, slot * width is the start of each row
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+}
@@ -0,0 +1,51 @@
+package CAClassPackage;
+
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.nio.IntBuffer;
+
+/**
+ * Draws a HistoryBuffer into an image with one pixel per cell, oldest generation at the top, shown in a single
+ * ImageView that is scaled up to the window. The circular buffer is written straight into the image in two parts,
+ * so scrolling copies nothing
+ */
+public class HistoryRenderer {
+    private final WritableImage image;
+    private final ImageView view;
+
+    public HistoryRenderer(int width, int capacity) {
+        image = new WritableImage(width, capacity);
+
+        //Keep cells as sharp squares when scaled up
+        view = new ImageView(image);
+        view.setSmooth(false);
+    }
+
+    /**
+     * @return view showing the history, its fit size sets how big it's drawn
+     */
+    public ImageView getView() {
+        return view;
+    }
+
+    /**
+     * Draws the generations kept by a history the same size as this renderer
+     */
+    public void render(HistoryBuffer history) {
+        final int width = history.width;
+        int[] pixels = history.getPixels();
+        int oldest = history.getOldestSlot();
+        int visible = history.getVisibleRows();
+        if (visible == 0) return;
+        PixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+
+        //Slots from the oldest to the end of the buffer, then the ones that wrapped around to its start
+        int firstPart = Math.min(visible, history.capacity - oldest);
+        image.getPixelWriter().setPixels(0, 0, width, firstPart, format, pixels, oldest * width, width);
+        if (visible > firstPart) {
+            image.getPixelWriter().setPixels(0, firstPart, width, visible - firstPart, format, pixels, 0, width);
+        }
+    }
+}
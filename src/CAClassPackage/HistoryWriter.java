@@ -0,0 +1,42 @@
+package CAClassPackage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams every generation of a 1D Cellular Automata to a file, one line of digits per generation,
+ * in the same format as an Elementary CA's initial row
+ */
+public class HistoryWriter implements Closeable {
+    private final OutputStream out;
+    //Line being written, reused for every generation
+    private final byte[] line;
+
+    /**
+     * @param width amount of cells in each generation
+     */
+    public HistoryWriter(File file, int width) throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        line = new byte[width + 1];
+        line[width] = '\n';
+    }
+
+    /**
+     * @param states state of each cell, at least width long
+     */
+    public void write(byte[] states) throws IOException {
+        for (int i = 0; i < line.length - 1; i++) {
+            line[i] = (byte) Character.forDigit(states[i], Character.MAX_RADIX);
+        }
+        out.write(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,45 @@
+package CAClassPackage;
+
+/**
+ * ARGB pixels of a StateGrid, one per cell, looked up from a palette.
+ * Holds no GUI classes, so frames can be drawn off-screen and handed to whatever shows them
+ */
+public class PixelFrame {
+    public final int numRows;
+    public final int numCols;
+    //ARGB color of each cell state, indexed by state
+    private final int[] palette;
+    //Pixels of the last frame drawn, reused every frame
+    private final int[] pixels;
+
+    /**
+     * @param palette ARGB color of each cell state
+     */
+    public PixelFrame(int numRows, int numCols, int[] palette) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.palette = palette.clone();
+        pixels = new int[numRows * numCols];
+    }
+
+    /**
+     * Draws the current state of a grid the same size as this frame
+     *
+     * @return pixels of the frame in row-major order, reused by the next call
+     */
+    public int[] draw(StateGrid grid) {
+        byte[] cells = grid.getCells();
+        for (int row = 0, pixel = 0; row < numRows; row++) {
+            int offset = grid.index(row, 0);
+            for (int col = 0; col < numCols; col++) {
+                pixels[pixel++] = palette[cells[offset + col]];
+            }
+        }
+
+        return pixels;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+}
@@ -0,0 +1,194 @@
+package CAClassPackage;
+
+import Engines.LifeLikeRule;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for run length encoded (RLE) Game Of Life patterns, as used by Golly and the LifeWiki.
+ * Comment lines start with #, then a header line such as "x = 3, y = 3, rule = B36/S23" gives the size of the
+ * pattern and optionally its {@link LifeLikeRule}, followed by runs of cells: an optional count then b for dead cells, o for alive cells,
+ * $ for the end of a row or ! for the end of the pattern.
+ * Runs are written straight into the grid's buffer as they are read, so no line or string is built for the
+ * cells however large the pattern is
+ */
+public class RleReader {
+    public static final String EXTENSION = ".rle";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    //Rule from the header, null if it has none
+    private LifeLikeRule rule;
+
+    private RleReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @return A StateGrid the size of the pattern, holding the pattern
+     * @throws IllegalInitialStateException If the header is missing or the pattern doesn't fit it
+     */
+    public static StateGrid read(File file) throws IOException, IllegalInitialStateException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * @return A StateGrid the size of the pattern, holding the pattern
+     * @throws IllegalInitialStateException If the header is missing or the pattern doesn't fit it
+     */
+    public static StateGrid read(Reader in) throws IOException, IllegalInitialStateException {
+        RleReader reader = new RleReader(in);
+        StateGrid grid = reader.readHeader();
+        reader.readCells(grid);
+
+        return grid;
+    }
+
+    /**
+     * Reads only the header of a pattern
+     *
+     * @return rule the header gives, or null if it gives none
+     * @throws IllegalInitialStateException If the header is missing or its rule isn't Life-like
+     */
+    public static LifeLikeRule readRule(File file) throws IOException, IllegalInitialStateException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII)) {
+            RleReader reader = new RleReader(in);
+            reader.readHeader();
+
+            return reader.rule;
+        }
+    }
+
+    /**
+     * Skips comment lines, then reads the header line
+     *
+     * @return empty grid the size the header gives
+     */
+    private StateGrid readHeader() throws IOException, IllegalInitialStateException {
+        String line;
+        do {
+            line = readLine();
+            if (line == null) throw new IllegalInitialStateException("RLE file has no header line.");
+        } while (line.startsWith("#") || line.isBlank());
+
+        int numCols = -1;
+        int numRows = -1;
+        for (String field : line.split(",")) {
+            String[] pair = field.split("=", 2);
+            if (pair.length != 2) throw new IllegalInitialStateException("Invalid RLE header: " + line);
+
+            String key = pair[0].trim();
+            String value = pair[1].trim();
+            try {
+                switch (key) {
+                    case "x": {
+                        numCols = Integer.parseInt(value);
+                        break;
+                    }
+                    case "y": {
+                        numRows = Integer.parseInt(value);
+                        break;
+                    }
+                    case "rule": {
+                        rule = LifeLikeRule.parse(value);
+                        break;
+                    }
+                    default: {
+                        //Other fields, such as Golly's position, don't change the cells
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalInitialStateException("Invalid RLE header: " + line);
+            }
+        }
+
+        if (numRows < 1 || numCols < 1) {
+            throw new IllegalInitialStateException("RLE header must give a positive x and y.");
+        }
+
+        return new StateGrid(numRows, numCols);
+    }
+
+    /**
+     * Reads runs of cells into a grid until the end of the pattern
+     */
+    private void readCells(StateGrid grid) throws IOException, IllegalInitialStateException {
+        byte[] cells = grid.getCells();
+        int row = 0;
+        int col = 0;
+        int count = 0;
+
+        int c;
+        while ((c = next()) != -1 && c != '!') {
+            if (c >= '0' && c <= '9') {
+                if (count > (Integer.MAX_VALUE - (c - '0')) / 10) {
+                    throw new IllegalInitialStateException("Run in RLE file is too long.");
+                }
+                count = count * 10 + (c - '0');
+                continue;
+            }
+
+            int run = (count == 0) ? 1 : count;
+            count = 0;
+            if (c == '$') {
+                row += run;
+                col = 0;
+            } else if (c == 'b' || c == '.') {
+                col += run;
+            } else if (Character.isLetter(c)) {
+                //Any other state is alive, as in 2 state Golly patterns
+                if (row >= grid.numRows || col + run > grid.numCols) {
+                    throw new IllegalInitialStateException("Pattern is larger than its header says.");
+                }
+                int offset = grid.index(row, col);
+                Arrays.fill(cells, offset, offset + run, (byte) 1);
+                col += run;
+            } else if (c == '#') {
+                //Some files put comments after the pattern
+                readLine();
+            } else if (!Character.isWhitespace(c)) {
+                throw new IllegalInitialStateException("Unexpected character in RLE file: " + (char) c);
+            }
+        }
+    }
+
+    /**
+     * @return next char, or -1 at the end of the file
+     */
+    private int next() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        return buffer[position++];
+    }
+
+    /**
+     * @return rest of the current line, or null at the end of the file
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = next()) != -1 && c != '\n') {
+            if (c != '\r') line.append((char) c);
+        }
+
+        return (c == -1 && line.length() == 0) ? null : line.toString();
+    }
+}
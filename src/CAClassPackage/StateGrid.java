@@ -0,0 +1,257 @@
+package CAClassPackage;
+
+/**
+ * State-only grid for 2D Cellular Automatas.
+ * Holds one byte per cell in a flat row-major array, plus a second buffer that each new
+ * generation is written into before the two are swapped. No cell objects are created per generation.
+ * Each buffer is surrounded by a halo, one cell wide unless a wider neighborhood needs more, refreshed from the
+ * {@link EdgeMode} once per generation, so step kernels can read every neighbor without checking bounds.
+ * Rows are {@link #stride} cells apart.
+ */
+public class StateGrid {
+    public final int numRows;
+    public final int numCols;
+    //Width of the halo on each side
+    public final int halo;
+    //Distance between rows in the buffers, including the halo
+    public final int stride;
+    //Buffer holding the current generation
+    private byte[] cells;
+    //Buffer the next generation is written into
+    private byte[] nextCells;
+    private long generation;
+    private EdgeMode edgeMode = EdgeMode.TOROIDAL;
+    //State of the halo in FIXED mode
+    private byte fixedState;
+    //Zobrist hash of the current generation, only kept up to date while hashing is on
+    private boolean hashing;
+    private long hash;
+
+    public StateGrid(int numRows, int numCols) {
+        this(numRows, numCols, 1);
+    }
+
+    /**
+     * @param halo width of the halo, at least the radius of the widest neighborhood the grid is stepped with
+     */
+    public StateGrid(int numRows, int numCols, int halo) {
+        if (halo < 1) throw new IllegalArgumentException("Halo must be at least 1 cell wide.");
+
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.halo = halo;
+        stride = numCols + 2 * halo;
+        cells = new byte[(numRows + 2 * halo) * stride];
+        nextCells = new byte[(numRows + 2 * halo) * stride];
+    }
+
+    /**
+     * .get() method that follows the grid's edge mode for coordinates beyond its bounds
+     *
+     * @return state of the cell
+     */
+    public int get(int row, int col) {
+        if (row < 0 || row >= numRows || col < 0 || col >= numCols) {
+            switch (edgeMode) {
+                case FIXED: {
+                    return fixedState;
+                }
+                case REFLECTING: {
+                    row = Math.max(0, Math.min(row, numRows - 1));
+                    col = Math.max(0, Math.min(col, numCols - 1));
+                    break;
+                }
+                default: {
+                    row = Math.floorMod(row, numRows);
+                    col = Math.floorMod(col, numCols);
+                }
+            }
+        }
+
+        return cells[index(row, col)];
+    }
+
+    public void set(int row, int col, int state) {
+        int index = index(row, col);
+        if (hashing) hash ^= ZobristHash.key((long) row * numCols + col, cells[index])
+                ^ ZobristHash.key((long) row * numCols + col, state);
+        cells[index] = (byte) state;
+    }
+
+    /**
+     * @return index of a cell in the buffers, rows and cols [-halo, 0) and [numRows/numCols, +halo) are the halo
+     */
+    public int index(int row, int col) {
+        return (row + halo) * stride + col + halo;
+    }
+
+    /**
+     * @return buffer holding the current generation, in row-major order with a halo around it
+     */
+    public byte[] getCells() {
+        return cells;
+    }
+
+    /**
+     * @return buffer the next generation should be written into, in row-major order with a halo around it
+     */
+    public byte[] getNextCells() {
+        return nextCells;
+    }
+
+    public EdgeMode getEdgeMode() {
+        return edgeMode;
+    }
+
+    public void setEdgeMode(EdgeMode edgeMode) {
+        this.edgeMode = edgeMode;
+    }
+
+    public int getFixedState() {
+        return fixedState;
+    }
+
+    /**
+     * @param fixedState state of the cells past the edges in FIXED mode
+     */
+    public void setFixedState(int fixedState) {
+        this.fixedState = (byte) fixedState;
+    }
+
+    /**
+     * Fills the halo of the current generation from the edge mode, should be called before each step
+     */
+    public void refreshHalo() {
+        if (edgeMode == EdgeMode.FIXED) {
+            java.util.Arrays.fill(cells, 0, index(0, 0), fixedState);
+            java.util.Arrays.fill(cells, index(numRows - 1, numCols), cells.length, fixedState);
+            for (int row = 0; row < numRows; row++) {
+                int offset = index(row, 0);
+                java.util.Arrays.fill(cells, offset - halo, offset, fixedState);
+                java.util.Arrays.fill(cells, offset + numCols, offset + numCols + halo, fixedState);
+            }
+            return;
+        }
+
+        //Sides first, then whole rows so the corners are filled too
+        final int first = index(0, 0);
+        final int last = index(numRows - 1, 0);
+        for (int k = 1; k <= halo; k++) {
+            //Distance from each halo cell to the cell it copies, the same on every row
+            int west = edgeSource(-k, numCols) + k;
+            int east = edgeSource(numCols - 1 + k, numCols) - (numCols - 1 + k);
+            for (int offset = first; offset <= last; offset += stride) {
+                cells[offset - k] = cells[offset - k + west];
+                cells[offset + numCols - 1 + k] = cells[offset + numCols - 1 + k + east];
+            }
+        }
+        for (int k = 1; k <= halo; k++) {
+            System.arraycopy(cells, index(edgeSource(-k, numRows), -halo), cells, index(-k, -halo), stride);
+            System.arraycopy(cells, index(edgeSource(numRows - 1 + k, numRows), -halo),
+                    cells, index(numRows - 1 + k, -halo), stride);
+        }
+    }
+
+    /**
+     * @return row or col inside the grid that a row or col past its edge copies, wrapping or reflecting
+     */
+    private int edgeSource(int position, int size) {
+        return (edgeMode == EdgeMode.REFLECTING)
+                ? Math.max(0, Math.min(position, size - 1))
+                : Math.floorMod(position, size);
+    }
+
+    public boolean isHashing() {
+        return hashing;
+    }
+
+    /**
+     * Turns on keeping a {@link ZobristHash} of the current generation, which steppers update from the
+     * cells that change
+     */
+    public void setHashing(boolean hashing) {
+        this.hashing = hashing;
+        if (hashing) hash = ZobristHash.of(this);
+    }
+
+    /**
+     * @return Zobrist hash of the current generation, if hashing is on
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Folds the cells in rows [fromRow, toRow) and cols [fromCol, toCol) that differ between the current and
+     * next generation into the hash, if hashing is on.
+     * Steppers call this before swapping for each region that could have changed
+     */
+    public void hashChanges(int fromRow, int toRow, int fromCol, int toCol) {
+        if (hashing) hash ^= ZobristHash.change(cells, nextCells, this, fromRow, toRow, fromCol, toCol);
+    }
+
+    /**
+     * Makes the next generation the current one, and advances the generation count
+     */
+    public void swap() {
+        byte[] temp = cells;
+        cells = nextCells;
+        nextCells = temp;
+        ++generation;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * @return amount of cells in a non-zero state
+     */
+    public long population() {
+        long population = 0;
+        for (int row = 0; row < numRows; row++) {
+            int offset = index(row, 0);
+            for (int col = 0; col < numCols; col++) {
+                if (cells[offset + col] != 0) ++population;
+            }
+        }
+
+        return population;
+    }
+
+    /**
+     * @return independent copy of the current generation
+     */
+    public StateGrid copy() {
+        StateGrid copy = new StateGrid(numRows, numCols, halo);
+        System.arraycopy(cells, 0, copy.cells, 0, cells.length);
+        copyStateInto(copy);
+
+        return copy;
+    }
+
+    /**
+     * @return independent copy of the current generation, with a halo of another width
+     */
+    public StateGrid withHalo(int halo) {
+        StateGrid copy = new StateGrid(numRows, numCols, halo);
+        for (int row = 0; row < numRows; row++) {
+            System.arraycopy(cells, index(row, 0), copy.cells, copy.index(row, 0), numCols);
+        }
+        copyStateInto(copy);
+
+        return copy;
+    }
+
+    private void copyStateInto(StateGrid copy) {
+        copy.generation = generation;
+        copy.edgeMode = edgeMode;
+        copy.fixedState = fixedState;
+        copy.hashing = hashing;
+        copy.hash = hash;
+    }
+}
@@ -0,0 +1,76 @@
+package CAClassPackage;
+
+/**
+ * Zobrist-style hashing of grid states. The hash of a grid is the XOR of one random 64-bit key per cell that isn't
+ * in state 0, so a cell changing state only changes the hash by the XOR of its old and new keys, and an empty
+ * grid hashes to 0. Keys are made by mixing the cell and state together instead of being stored in a table,
+ * so any size of grid can be hashed without extra memory
+ */
+public class ZobristHash {
+    /**
+     * @param cell  index of the cell in row-major order, without any halo
+     * @param state state of the cell
+     * @return key of the cell in that state, 0 for state 0
+     */
+    public static long key(long cell, int state) {
+        if (state == 0) return 0;
+
+        long z = mix(cell * 0x9E3779B97F4A7C15L + state * 0xBF58476D1CE4E5B9L);
+
+        //A key of 0 would make the cell invisible to the hash
+        return (z == 0) ? 1 : z;
+    }
+
+    /**
+     * Key for a whole word of bit-packed cells, for engines that hash a word at a time instead of a cell at a time.
+     * These hashes follow the same rules, a word only changes the hash by the XOR of its old and new keys and
+     * a word of all 0's has key 0, but they aren't equal to cell hashes of the same cells
+     *
+     * @param word index of the word
+     * @param bits cells held in the word
+     * @return key of the word holding those cells
+     */
+    public static long wordKey(long word, long bits) {
+        if (bits == 0) return 0;
+
+        long z = mix(word * 0x9E3779B97F4A7C15L ^ bits);
+        return (z == 0) ? 1 : z;
+    }
+
+    /**
+     * @return hash of the current generation of a grid
+     */
+    public static long of(StateGrid grid) {
+        return change(grid.getCells(), new byte[grid.getCells().length], grid, 0, grid.numRows, 0, grid.numCols);
+    }
+
+    /**
+     * Compares two buffers of a grid over the cells in rows [fromRow, toRow) and cols [fromCol, toCol)
+     *
+     * @return XOR of the old and new key of every cell that differs between the buffers
+     */
+    public static long change(byte[] before, byte[] after, StateGrid grid,
+                              int fromRow, int toRow, int fromCol, int toCol) {
+        long change = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            int offset = grid.index(row, 0);
+            long cell = (long) row * grid.numCols;
+            for (int col = fromCol; col < toCol; col++) {
+                int old = before[offset + col];
+                int now = after[offset + col];
+                if (old != now) change ^= key(cell + col, old) ^ key(cell + col, now);
+            }
+        }
+
+        return change;
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads every bit of the input over the whole output
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
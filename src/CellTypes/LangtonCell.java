@@ -41,7 +41,19 @@ public class LangtonCell extends Cell {
     }
 
     //Helpers
-    public Color inferStatusColor(int status) {
+    /**
+     * @return color of every state, indexed by state
+     */
+    public static Color[] palette() {
+        Color[] palette = new Color[8];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = inferStatusColor(i);
+        }
+
+        return palette;
+    }
+
+    public static Color inferStatusColor(int status) {
         switch (status) {
             case 0: {
                 return Color.BLACK;
@@ -0,0 +1,165 @@
+package Engines;
+
+import java.util.Arrays;
+
+/**
+ * Tracks which tiles of a grid changed in the last generation, so only those tiles and their neighbors
+ * are stepped. A tile whose 3x3 block of tiles didn't change holds the same states in both buffers of a
+ * double-buffered grid, so it can be skipped without copying anything.
+ * Tiles are treated as neighbors across the grid's edges, which also covers grids with other edge modes.
+ */
+public class ActiveTiles {
+    //Tile size used for byte-per-cell grids
+    public static final int DEFAULT_TILE_SIZE = 16;
+
+    public final int tileHeight;
+    public final int tileWidth;
+    public final int tileRows;
+    public final int tileCols;
+    //Tiles that changed in the last generation
+    private boolean[] changed;
+    //Tiles changing in the generation being stepped
+    private boolean[] nextChanged;
+    //Tiles that must be stepped this generation
+    private boolean[] active;
+    private int activeCount;
+
+    /**
+     * Steps one tile, covering rows [fromRow, toRow) and cols [fromCol, toCol)
+     */
+    public interface TileStep {
+        /**
+         * @return if any cell of the tile changed
+         */
+        boolean step(int fromRow, int toRow, int fromCol, int toCol);
+    }
+
+    /**
+     * Visits one tile, covering rows [fromRow, toRow) and cols [fromCol, toCol)
+     */
+    public interface TileVisitor {
+        void visit(int fromRow, int toRow, int fromCol, int toCol);
+    }
+
+    /**
+     * @param numRows    amount of rows in the grid
+     * @param numCols    amount of cols in the grid
+     * @param tileHeight amount of rows in each tile
+     * @param tileWidth  amount of cols in each tile
+     */
+    public ActiveTiles(int numRows, int numCols, int tileHeight, int tileWidth) {
+        this.tileHeight = tileHeight;
+        this.tileWidth = tileWidth;
+        tileRows = (numRows + tileHeight - 1) / tileHeight;
+        tileCols = (numCols + tileWidth - 1) / tileWidth;
+        changed = new boolean[tileRows * tileCols];
+        nextChanged = new boolean[tileRows * tileCols];
+        active = new boolean[tileRows * tileCols];
+        markAllChanged();
+    }
+
+    /**
+     * Forces every tile to be stepped next generation, for when the grid is changed from outside
+     */
+    public void markAllChanged() {
+        Arrays.fill(changed, true);
+    }
+
+    /**
+     * Forces the tile holding a cell, and its neighbors, to be stepped next generation
+     */
+    public void markChanged(int row, int col) {
+        changed[(row / tileHeight) * tileCols + col / tileWidth] = true;
+    }
+
+    /**
+     * @return amount of tiles stepped in the last generation
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getTileCount() {
+        return changed.length;
+    }
+
+    /**
+     * Steps every active tile
+     *
+     * @param numRows amount of rows in the grid
+     * @param numCols amount of cols in the grid
+     * @param stepper stepper to spread rows of tiles over, or null to step on this thread
+     * @return amount of tiles stepped
+     */
+    public int step(int numRows, int numCols, TileStep tileStep, ParallelStepper stepper) {
+        //A tile is active if it, or a tile next to it, changed
+        Arrays.fill(active, false);
+        int count = 0;
+        for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+            for (int tileCol = 0; tileCol < tileCols; tileCol++) {
+                if (!changed[tileRow * tileCols + tileCol]) continue;
+
+                for (int nestRow = tileRow - 1; nestRow <= tileRow + 1; nestRow++) {
+                    int wrappedRow = (nestRow + tileRows) % tileRows;
+                    for (int nestCol = tileCol - 1; nestCol <= tileCol + 1; nestCol++) {
+                        int tile = wrappedRow * tileCols + (nestCol + tileCols) % tileCols;
+                        if (!active[tile]) {
+                            active[tile] = true;
+                            ++count;
+                        }
+                    }
+                }
+            }
+        }
+        activeCount = count;
+        if (count == 0) return 0;
+
+        //Step active tiles, recording which ones changed
+        boolean[] nowChanged = nextChanged;
+        Arrays.fill(nowChanged, false);
+        ParallelStepper.RowBand band = (fromTileRow, toTileRow) -> {
+            for (int tileRow = fromTileRow; tileRow < toTileRow; tileRow++) {
+                int fromRow = tileRow * tileHeight;
+                int toRow = Math.min(fromRow + tileHeight, numRows);
+
+                for (int tileCol = 0; tileCol < tileCols; tileCol++) {
+                    int tile = tileRow * tileCols + tileCol;
+                    if (!active[tile]) continue;
+
+                    int fromCol = tileCol * tileWidth;
+                    nowChanged[tile] = tileStep.step(fromRow, toRow, fromCol, Math.min(fromCol + tileWidth, numCols));
+                }
+            }
+        };
+
+        if (stepper == null) {
+            band.step(0, tileRows);
+        } else {
+            stepper.forEachBand(tileRows, tileHeight * numCols, band);
+        }
+        nextChanged = changed;
+        changed = nowChanged;
+
+        return count;
+    }
+
+    /**
+     * Visits every tile that changed in the last generation stepped, which are the only tiles whose
+     * states differ between the two buffers of the grid
+     *
+     * @param numRows amount of rows in the grid
+     * @param numCols amount of cols in the grid
+     */
+    public void forEachChanged(int numRows, int numCols, TileVisitor visitor) {
+        for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+            int fromRow = tileRow * tileHeight;
+            for (int tileCol = 0; tileCol < tileCols; tileCol++) {
+                if (!changed[tileRow * tileCols + tileCol]) continue;
+
+                int fromCol = tileCol * tileWidth;
+                visitor.visit(fromRow, Math.min(fromRow + tileHeight, numRows),
+                        fromCol, Math.min(fromCol + tileWidth, numCols));
+            }
+        }
+    }
+}
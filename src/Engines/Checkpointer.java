@@ -0,0 +1,205 @@
+package Engines;
+
+import CAClassPackage.CheckpointFile;
+import CAClassPackage.IllegalInitialStateException;
+import CAClassPackage.StateGrid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Saves {@link CheckpointFile}s of a long run every so many generations or seconds, and finds the latest
+ * one to resume from.
+ * The stepping thread only copies the grid, compressing and writing happen on a background thread.
+ * Copies are handed over through a single latest-value slot, so if the disk falls behind the oldest unwritten
+ * checkpoint is dropped instead of queueing up copies of the grid.
+ * Each checkpoint is named by its generation, and only the newest few written by this run are kept
+ */
+public class Checkpointer implements AutoCloseable {
+    //System property setting the directory checkpoints are written to, checkpoints are off when it isn't set
+    public static final String DIRECTORY_PROPERTY = "ca.checkpointDirectory";
+    //System property setting the generations between checkpoints, 0 for none
+    public static final String GENERATIONS_PROPERTY = "ca.checkpointGenerations";
+    //System property setting the seconds between checkpoints, 0 for none
+    public static final String SECONDS_PROPERTY = "ca.checkpointSeconds";
+    //System property that, when true, resumes from the latest checkpoint in the directory
+    public static final String RESUME_PROPERTY = "ca.resume";
+    public static final long DEFAULT_GENERATIONS = 100_000;
+    public static final long DEFAULT_SECONDS = 300;
+    //Checkpoints of this run kept on disk, older ones are deleted once a newer one is written
+    private static final int KEEP = 2;
+    private static final Pattern NAME = Pattern.compile("checkpoint-(\\d+)" + Pattern.quote(CheckpointFile.EXTENSION));
+
+    private final File directory;
+    private final String rule;
+    private final int numStates;
+    private final long everyGenerations;
+    private final long everyNanos;
+    private final boolean resume;
+    //Copy waiting for the writer, null once it's taken
+    private final AtomicReference<StateGrid> pending = new AtomicReference<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //Files written by this run, oldest first, only touched by the writer
+    private final Deque<File> written = new ArrayDeque<>();
+    //Only touched by the stepping thread
+    private long sinceLast = 0;
+    private long lastTime = System.nanoTime();
+
+    /**
+     * @param rule             identity of the rule the grid is stepped with, such as {@link RuleTable#identity()}
+     * @param numStates        amount of states cells can be in
+     * @param everyGenerations generations between checkpoints, 0 for none
+     * @param everySeconds     seconds between checkpoints, 0 for none
+     * @param resume           if {@link #resume(StateGrid)} looks for a checkpoint, instead of starting over
+     */
+    public Checkpointer(File directory, String rule, int numStates, long everyGenerations, long everySeconds,
+                        boolean resume) {
+        if (everyGenerations < 0 || everySeconds < 0) {
+            throw new IllegalArgumentException("Time between checkpoints can't be negative.");
+        }
+
+        this.directory = directory;
+        this.rule = rule;
+        this.numStates = numStates;
+        this.everyGenerations = everyGenerations;
+        this.everyNanos = TimeUnit.SECONDS.toNanos(everySeconds);
+        this.resume = resume;
+    }
+
+    /**
+     * Creates a checkpointer set by {@link #DIRECTORY_PROPERTY}, {@link #GENERATIONS_PROPERTY},
+     * {@link #SECONDS_PROPERTY} and {@link #RESUME_PROPERTY}
+     *
+     * @return the checkpointer, or null if no directory is set
+     */
+    public static Checkpointer fromProperties(String rule, int numStates) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isBlank()) return null;
+
+        return new Checkpointer(new File(directory), rule, numStates,
+                Math.max(0, Long.getLong(GENERATIONS_PROPERTY, DEFAULT_GENERATIONS)),
+                Math.max(0, Long.getLong(SECONDS_PROPERTY, DEFAULT_SECONDS)),
+                Boolean.getBoolean(RESUME_PROPERTY));
+    }
+
+    /**
+     * Finds the checkpoint to resume from, the one with the latest generation that reads back whole and was made
+     * with the same rule, amount of states and size of grid. Checkpoints that don't are skipped, with a warning
+     *
+     * @param initialState grid the run starts from when there's nothing to resume
+     * @return the checkpoint, or initialState if not resuming or there's no valid checkpoint
+     */
+    public StateGrid resume(StateGrid initialState) {
+        if (!resume) return initialState;
+
+        File[] files = directory.listFiles((dir, name) -> NAME.matcher(name).matches());
+        if (files == null) return initialState;
+        Arrays.sort(files, Comparator.comparingLong(Checkpointer::generationOf).reversed());
+
+        for (File file : files) {
+            try {
+                StateGrid checkpoint = CheckpointFile.read(file, rule, numStates);
+                if (checkpoint.numRows != initialState.numRows || checkpoint.numCols != initialState.numCols) {
+                    throw new IllegalInitialStateException("Checkpoint is " + checkpoint.numRows + " by "
+                            + checkpoint.numCols + ", not " + initialState.numRows + " by " + initialState.numCols + ".");
+                }
+
+                checkpoint.setEdgeMode(initialState.getEdgeMode());
+                checkpoint.setFixedState(initialState.getFixedState());
+                return checkpoint;
+            } catch (IOException | IllegalInitialStateException e) {
+                System.err.println("Skipping checkpoint " + file + ": " + e.getMessage());
+            }
+        }
+
+        return initialState;
+    }
+
+    private static long generationOf(File file) {
+        Matcher name = NAME.matcher(file.getName());
+        try {
+            return name.matches() ? Long.parseLong(name.group(1)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Counts a generation stepped, should be called once after each step
+     *
+     * @return if a checkpoint should be submitted
+     */
+    public boolean due() {
+        ++sinceLast;
+        if (everyGenerations > 0 && sinceLast >= everyGenerations) return true;
+        return everyNanos > 0 && System.nanoTime() - lastTime >= everyNanos;
+    }
+
+    /**
+     * Hands a copy of the grid to the background writer
+     *
+     * @param snapshot grid holding the current generation, which must never be changed after it's submitted
+     */
+    public void submit(StateGrid snapshot) {
+        sinceLast = 0;
+        lastTime = System.nanoTime();
+        //A copy already waiting means a write is already queued, which will take this one instead
+        if (pending.getAndSet(snapshot) == null) {
+            writer.execute(this::writePending);
+        }
+    }
+
+    private void writePending() {
+        StateGrid snapshot = pending.getAndSet(null);
+        if (snapshot == null) return;
+
+        File file = new File(directory, "checkpoint-" + snapshot.getGeneration() + CheckpointFile.EXTENSION);
+        try {
+            Files.createDirectories(directory.toPath());
+            CheckpointFile.write(file, snapshot, rule, numStates);
+        } catch (IOException e) {
+            //Stepping carries on, the next checkpoint may succeed
+            System.err.println("Couldn't write checkpoint " + file + ": " + e.getMessage());
+            return;
+        }
+
+        written.remove(file);
+        written.addLast(file);
+        while (written.size() > KEEP) {
+            File old = written.removeFirst();
+            if (!old.delete() && old.exists()) {
+                System.err.println("Couldn't delete old checkpoint " + old);
+            }
+        }
+    }
+
+    /**
+     * Waits for the checkpoint being written, if any, then stops the writer
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("Gave up waiting for a checkpoint to be written.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package Engines;
+
+import CAClassPackage.StateGrid;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Unbounded 2D grid made of 64x64 chunks, kept in a hash map keyed by the chunk's packed coordinates.
+ * Only chunks holding non-background cells, or next to chunks with activity on their edge, exist, so memory
+ * scales with the live area instead of the bounding box. Chunks are created when activity reaches an edge, and
+ * freed once they have been empty for a few generations, with their cells kept in a small pool for new chunks to reuse,
+ * so chunks around the edge of the activity aren't allocated and freed again every generation.
+ * The background state is 0, and rules must keep an all 0 neighborhood at 0
+ */
+public class ChunkedGrid {
+    public static final int CHUNK_SHIFT = 6;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    //Width of a chunk with a one cell ring of its neighbors around it
+    private static final int PADDED_SIZE = CHUNK_SIZE + 2;
+    //Generations a chunk may be empty, with no activity on its neighbors' edges, before it's freed
+    private static final int KEEP_EMPTY = 4;
+    //Most freed chunks whose cells are kept for reuse
+    private static final int POOL_SIZE = 64;
+
+    /**
+     * Steps the cells of one chunk, given the chunk surrounded by a one cell ring of its neighbors
+     */
+    public interface Kernel {
+        /**
+         * @param padded states of the chunk and its ring, row-major with rows of CHUNK_SIZE + 2 cells
+         * @param out    next states of the chunk, row-major with rows of CHUNK_SIZE cells
+         */
+        void step(byte[] padded, byte[] out);
+    }
+
+    /**
+     * A 64x64 block of cells
+     */
+    static final class Chunk {
+        final int chunkRow;
+        final int chunkCol;
+        byte[] cells;
+        byte[] nextCells;
+        //Amount of non-background cells
+        int population;
+        //Generations in a row this chunk has been empty without being needed by a neighbor
+        int emptyGenerations;
+
+        Chunk(int chunkRow, int chunkCol) {
+            this(chunkRow, chunkCol, new byte[CHUNK_SIZE * CHUNK_SIZE], new byte[CHUNK_SIZE * CHUNK_SIZE]);
+        }
+
+        /**
+         * @param cells     all background cells
+         * @param nextCells cells overwritten by the next step
+         */
+        Chunk(int chunkRow, int chunkCol, byte[] cells, byte[] nextCells) {
+            this.chunkRow = chunkRow;
+            this.chunkCol = chunkCol;
+            this.cells = cells;
+            this.nextCells = nextCells;
+        }
+
+        /**
+         * @return if any cell on the border of this chunk is not background
+         */
+        boolean isEdgeActive() {
+            int last = CHUNK_SIZE - 1;
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                if (cells[i] != 0 || cells[last * CHUNK_SIZE + i] != 0
+                        || cells[i * CHUNK_SIZE] != 0 || cells[i * CHUNK_SIZE + last] != 0) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private final Kernel kernel;
+    private final ChunkMap chunks = new ChunkMap();
+    //Freed chunks, whose cells are all background, for new chunks to take their cells from
+    private final ArrayDeque<Chunk> pool = new ArrayDeque<>();
+    private long generation;
+
+    public ChunkedGrid(Kernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * @return kernel following the Game Of Life's B3/S23 rules
+     */
+    public static Kernel lifeKernel() {
+        return lifeKernel(LifeLikeRule.CONWAY);
+    }
+
+    /**
+     * @return kernel stepping a 2 state grid with a Life-like rule, looking up each 3x3 neighborhood in its table
+     */
+    public static Kernel lifeKernel(LifeLikeRule rule) {
+        final byte[] table = rule.table;
+
+        return (padded, out) -> {
+            for (int row = 0; row < CHUNK_SIZE; row++) {
+                int above = row * PADDED_SIZE + 1;
+                int middle = above + PADDED_SIZE;
+                int below = middle + PADDED_SIZE;
+
+                int neighborhood = LifeLikeRule.neighborhoodIndex(0,
+                        LifeLikeRule.column(padded[above - 1], padded[middle - 1], padded[below - 1]),
+                        LifeLikeRule.column(padded[above], padded[middle], padded[below]));
+
+                for (int col = 0; col < CHUNK_SIZE; col++) {
+                    int east = LifeLikeRule.column(padded[above + col + 1], padded[middle + col + 1],
+                            padded[below + col + 1]);
+                    neighborhood = ((neighborhood << 3) | east) & 511;
+
+                    out[row * CHUNK_SIZE + col] = table[neighborhood];
+                }
+            }
+        };
+    }
+
+    /**
+     * @return kernel looking up each neighborhood in a rule table, gathered through its neighborhood's offsets
+     * @throws IllegalArgumentException If the rule table's neighborhood reaches past the one cell ring, or it doesn't
+     *                                  keep the all 0 neighborhood at 0
+     */
+    public static Kernel ruleTableKernel(RuleTable ruleTable) {
+        if (ruleTable.neighborhood.radius > 1) {
+            throw new IllegalArgumentException("Unbounded grids only support neighborhoods of radius 1.");
+        }
+        //Chunks past the live area are never stepped, so they must stay 0
+        if (!ruleTable.keepsQuiet()) {
+            throw new IllegalArgumentException("Unbounded grids only support rules that keep all 0 neighborhoods at 0.");
+        }
+        final int states = ruleTable.numStates;
+        final int[] offsets = ruleTable.neighborhood.offsets(PADDED_SIZE);
+
+        return (padded, out) -> {
+            for (int row = 0; row < CHUNK_SIZE; row++) {
+                int middle = (row + 1) * PADDED_SIZE + 1;
+
+                for (int col = 0; col < CHUNK_SIZE; col++) {
+                    int index = 0;
+                    for (int offset : offsets) {
+                        index = index * states + padded[middle + col + offset];
+                    }
+
+                    out[row * CHUNK_SIZE + col] = (byte) ruleTable.lookup(index);
+                }
+            }
+        };
+    }
+
+    /**
+     * Loads a grid, with its top left cell at row 0, col 0
+     */
+    public static ChunkedGrid fromStateGrid(StateGrid grid, Kernel kernel) {
+        ChunkedGrid chunked = new ChunkedGrid(kernel);
+        byte[] states = grid.getCells();
+
+        for (int row = 0; row < grid.numRows; row++) {
+            for (int col = 0; col < grid.numCols; col++) {
+                if (states[grid.index(row, col)] != 0) chunked.set(row, col, states[grid.index(row, col)]);
+            }
+        }
+        chunked.generation = grid.getGeneration();
+
+        return chunked;
+    }
+
+    public int get(long row, long col) {
+        Chunk chunk = chunks.get(chunkCoordinate(row), chunkCoordinate(col));
+        if (chunk == null) return 0;
+
+        return chunk.cells[(int) ((row & (CHUNK_SIZE - 1)) * CHUNK_SIZE + (col & (CHUNK_SIZE - 1)))];
+    }
+
+    public void set(long row, long col, int state) {
+        int chunkRow = chunkCoordinate(row);
+        int chunkCol = chunkCoordinate(col);
+        Chunk chunk = chunks.get(chunkRow, chunkCol);
+        if (chunk == null) {
+            if (state == 0) return;
+            chunk = newChunk(chunkRow, chunkCol);
+            chunks.put(chunk);
+        }
+
+        int index = (int) ((row & (CHUNK_SIZE - 1)) * CHUNK_SIZE + (col & (CHUNK_SIZE - 1)));
+        if (chunk.cells[index] != 0) --chunk.population;
+        if (state != 0) ++chunk.population;
+        chunk.cells[index] = (byte) state;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return amount of chunks currently allocated
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * @return amount of non-background cells
+     */
+    public long population() {
+        long population = 0;
+        for (Chunk chunk : chunks.values()) {
+            population += chunk.population;
+        }
+
+        return population;
+    }
+
+    /**
+     * Copies a window of the plane into a grid of the same size, so it can be rendered
+     *
+     * @param top  row of the window's top left cell
+     * @param left col of the window's top left cell
+     */
+    public void copyInto(StateGrid grid, long top, long left) {
+        byte[] states = grid.getCells();
+        Arrays.fill(states, (byte) 0);
+
+        for (Chunk chunk : chunks.values()) {
+            if (chunk.population == 0) continue;
+
+            long chunkTop = (long) chunk.chunkRow << CHUNK_SHIFT;
+            long chunkLeft = (long) chunk.chunkCol << CHUNK_SHIFT;
+            //Overlap of the chunk and the window
+            long fromRow = Math.max(chunkTop, top);
+            long toRow = Math.min(chunkTop + CHUNK_SIZE, top + grid.numRows);
+            long fromCol = Math.max(chunkLeft, left);
+            long toCol = Math.min(chunkLeft + CHUNK_SIZE, left + grid.numCols);
+            if (fromRow >= toRow || fromCol >= toCol) continue;
+
+            for (long row = fromRow; row < toRow; row++) {
+                System.arraycopy(chunk.cells, (int) ((row - chunkTop) * CHUNK_SIZE + (fromCol - chunkLeft)),
+                        states, grid.index((int) (row - top), (int) (fromCol - left)), (int) (toCol - fromCol));
+            }
+        }
+        grid.setGeneration(generation);
+    }
+
+    /**
+     * Advances the grid by one generation
+     */
+    public void step() {
+        step(null);
+    }
+
+    /**
+     * Advances the grid by one generation
+     *
+     * @param stepper stepper to spread chunks over, or null to step on this thread
+     */
+    public void step(ParallelStepper stepper) {
+        //Create the neighbors of chunks whose activity reached an edge, and keep the ones that exist
+        ArrayList<Chunk> existing = new ArrayList<>(chunks.values());
+        for (Chunk chunk : existing) {
+            if (chunk.population == 0 || !chunk.isEdgeActive()) continue;
+
+            for (int chunkRow = chunk.chunkRow - 1; chunkRow <= chunk.chunkRow + 1; chunkRow++) {
+                for (int chunkCol = chunk.chunkCol - 1; chunkCol <= chunk.chunkCol + 1; chunkCol++) {
+                    Chunk neighbor = chunks.get(chunkRow, chunkCol);
+                    if (neighbor == null) {
+                        chunks.put(newChunk(chunkRow, chunkCol));
+                    } else {
+                        neighbor.emptyGenerations = 0;
+                    }
+                }
+            }
+        }
+
+        //Step each chunk from its padded neighborhood
+        Chunk[] active = chunks.values().toArray(new Chunk[0]);
+        ParallelStepper.RowBand band = (from, to) -> {
+            byte[] padded = new byte[PADDED_SIZE * PADDED_SIZE];
+            for (int i = from; i < to; i++) {
+                Chunk chunk = active[i];
+                pad(chunk, padded);
+                kernel.step(padded, chunk.nextCells);
+            }
+        };
+        if (stepper == null) {
+            band.step(0, active.length);
+        } else {
+            stepper.forEachBand(active.length, CHUNK_SIZE * CHUNK_SIZE, band);
+        }
+
+        //Swap in each chunk's next generation, freeing the ones empty for too long
+        for (Chunk chunk : active) {
+            byte[] temp = chunk.cells;
+            chunk.cells = chunk.nextCells;
+            chunk.nextCells = temp;
+
+            int population = 0;
+            for (byte cell : chunk.cells) {
+                if (cell != 0) ++population;
+            }
+            chunk.population = population;
+
+            if (population != 0) {
+                chunk.emptyGenerations = 0;
+            } else if (++chunk.emptyGenerations > KEEP_EMPTY) {
+                chunks.remove(chunk.chunkRow, chunk.chunkCol);
+                if (pool.size() < POOL_SIZE) pool.push(chunk);
+            }
+        }
+        ++generation;
+    }
+
+    /**
+     * @return an empty chunk, with the cells of a freed one if any are pooled
+     */
+    private Chunk newChunk(int chunkRow, int chunkCol) {
+        Chunk freed = pool.poll();
+        return (freed == null) ? new Chunk(chunkRow, chunkCol) : new Chunk(chunkRow, chunkCol, freed.cells, freed.nextCells);
+    }
+
+    /**
+     * Copies a chunk and a one cell ring of its neighbors into a padded buffer
+     */
+    private void pad(Chunk chunk, byte[] padded) {
+        Arrays.fill(padded, (byte) 0);
+        final int last = CHUNK_SIZE - 1;
+
+        //Chunk itself
+        for (int row = 0; row < CHUNK_SIZE; row++) {
+            System.arraycopy(chunk.cells, row * CHUNK_SIZE, padded, (row + 1) * PADDED_SIZE + 1, CHUNK_SIZE);
+        }
+
+        //Edges of the chunks above, below, left and right
+        Chunk north = chunks.get(chunk.chunkRow - 1, chunk.chunkCol);
+        if (north != null) System.arraycopy(north.cells, last * CHUNK_SIZE, padded, 1, CHUNK_SIZE);
+        Chunk south = chunks.get(chunk.chunkRow + 1, chunk.chunkCol);
+        if (south != null) System.arraycopy(south.cells, 0, padded, (PADDED_SIZE - 1) * PADDED_SIZE + 1, CHUNK_SIZE);
+        Chunk west = chunks.get(chunk.chunkRow, chunk.chunkCol - 1);
+        Chunk east = chunks.get(chunk.chunkRow, chunk.chunkCol + 1);
+        for (int row = 0; row < CHUNK_SIZE; row++) {
+            if (west != null) padded[(row + 1) * PADDED_SIZE] = west.cells[row * CHUNK_SIZE + last];
+            if (east != null) padded[(row + 2) * PADDED_SIZE - 1] = east.cells[row * CHUNK_SIZE];
+        }
+
+        //Corners
+        Chunk corner = chunks.get(chunk.chunkRow - 1, chunk.chunkCol - 1);
+        if (corner != null) padded[0] = corner.cells[last * CHUNK_SIZE + last];
+        corner = chunks.get(chunk.chunkRow - 1, chunk.chunkCol + 1);
+        if (corner != null) padded[PADDED_SIZE - 1] = corner.cells[last * CHUNK_SIZE];
+        corner = chunks.get(chunk.chunkRow + 1, chunk.chunkCol - 1);
+        if (corner != null) padded[(PADDED_SIZE - 1) * PADDED_SIZE] = corner.cells[last];
+        corner = chunks.get(chunk.chunkRow + 1, chunk.chunkCol + 1);
+        if (corner != null) padded[PADDED_SIZE * PADDED_SIZE - 1] = corner.cells[0];
+    }
+
+    private static int chunkCoordinate(long coordinate) {
+        return (int) (coordinate >> CHUNK_SHIFT);
+    }
+
+    /**
+     * Open addressing hash map from packed chunk coordinates to chunks, without boxing keys
+     */
+    static final class ChunkMap {
+        private long[] keys = new long[16];
+        private Chunk[] values = new Chunk[16];
+        private int size;
+
+        private static long key(int chunkRow, int chunkCol) {
+            return ((long) chunkRow << 32) | (chunkCol & 0xFFFFFFFFL);
+        }
+
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 40) & (keys.length - 1);
+        }
+
+        int size() {
+            return size;
+        }
+
+        Chunk get(int chunkRow, int chunkCol) {
+            long key = key(chunkRow, chunkCol);
+            for (int i = slot(key); values[i] != null; i = (i + 1) & (keys.length - 1)) {
+                if (keys[i] == key) return values[i];
+            }
+
+            return null;
+        }
+
+        void put(Chunk chunk) {
+            if ((size + 1) * 2 > keys.length) resize();
+
+            long key = key(chunk.chunkRow, chunk.chunkCol);
+            int i = slot(key);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = chunk;
+                    return;
+                }
+                i = (i + 1) & (keys.length - 1);
+            }
+            keys[i] = key;
+            values[i] = chunk;
+            ++size;
+        }
+
+        void remove(int chunkRow, int chunkCol) {
+            long key = key(chunkRow, chunkCol);
+            int i = slot(key);
+            while (values[i] != null && keys[i] != key) i = (i + 1) & (keys.length - 1);
+            if (values[i] == null) return;
+
+            values[i] = null;
+            --size;
+            //Shift later entries of the probe run back into the gap
+            int gap = i;
+            for (i = (i + 1) & (keys.length - 1); values[i] != null; i = (i + 1) & (keys.length - 1)) {
+                int home = slot(keys[i]);
+                //Entry can move if its home isn't cyclically in (gap, i]
+                if (((i - home) & (keys.length - 1)) >= ((i - gap) & (keys.length - 1))) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    values[i] = null;
+                    gap = i;
+                }
+            }
+        }
+
+        ArrayList<Chunk> values() {
+            ArrayList<Chunk> chunks = new ArrayList<>(size);
+            for (Chunk chunk : values) {
+                if (chunk != null) chunks.add(chunk);
+            }
+
+            return chunks;
+        }
+
+        private void resize() {
+            Chunk[] old = values;
+            keys = new long[old.length * 2];
+            values = new Chunk[old.length * 2];
+            size = 0;
+            for (Chunk chunk : old) {
+                if (chunk != null) put(chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package Engines;
+
+import java.util.Arrays;
+
+/**
+ * Spots when a deterministic automata has settled, from the Zobrist hash of each generation.
+ * Hashes are kept in a bounded table of generations they were last seen at, so a long run takes up a fixed
+ * amount of memory. Once a hash comes back the run can only repeat itself from then on, with the gap between
+ * the two generations as its period. An empty grid hashes to 0 and is reported as extinct.
+ * Two hashes land in the same slot of the table rarely, and only hold up detection by a period when they do.
+ * Patterns that move, like gliders, are only caught once they wrap back around to where they started
+ */
+public class CycleDetector {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    public enum Outcome {
+        //Nothing repeated yet
+        RUNNING,
+        //Every cell is in state 0
+        EXTINCT,
+        //Stopped changing, a period of 1
+        STILL_LIFE,
+        //Repeats every period generations
+        OSCILLATING
+    }
+
+    //Hash stored in each slot, and the generation it was seen at or -1 for an empty slot
+    private final long[] hashes;
+    private final long[] generations;
+    private final int mask;
+    private Outcome outcome = Outcome.RUNNING;
+    private long period;
+    private long onset;
+
+    public CycleDetector() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity amount of hashes remembered, rounded up to a power of 2
+     */
+    public CycleDetector(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be in the range [1 - 2^30]");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        hashes = new long[size];
+        generations = new long[size];
+        Arrays.fill(generations, -1);
+        mask = size - 1;
+    }
+
+    /**
+     * Records the hash of a generation, generations should be recorded in order
+     *
+     * @return if the run has settled, by this generation or an earlier one
+     */
+    public boolean record(long generation, long hash) {
+        if (outcome != Outcome.RUNNING) return true;
+
+        if (hash == 0) {
+            outcome = Outcome.EXTINCT;
+            period = 1;
+            onset = generation;
+            return true;
+        }
+
+        //Keys are already well mixed, so the low bits are used as is
+        int slot = (int) hash & mask;
+        if (generations[slot] >= 0 && hashes[slot] == hash) {
+            period = generation - generations[slot];
+            onset = generations[slot];
+            outcome = (period == 1) ? Outcome.STILL_LIFE : Outcome.OSCILLATING;
+            return true;
+        }
+
+        hashes[slot] = hash;
+        generations[slot] = generation;
+        return false;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return generations between repeats, or 0 while running
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return first generation found to repeat, or 0 while running
+     */
+    public long getOnset() {
+        return onset;
+    }
+
+    /**
+     * Forgets every hash, for when the grid is changed from outside
+     */
+    public void reset() {
+        Arrays.fill(generations, -1);
+        outcome = Outcome.RUNNING;
+        period = 0;
+        onset = 0;
+    }
+
+    @Override
+    public String toString() {
+        switch (outcome) {
+            case EXTINCT: {
+                return "extinct at generation " + onset;
+            }
+            case STILL_LIFE: {
+                return "still life from generation " + onset;
+            }
+            case OSCILLATING: {
+                return "period " + period + " from generation " + onset;
+            }
+            default: {
+                return "running";
+            }
+        }
+    }
+}
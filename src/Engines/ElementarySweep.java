@@ -0,0 +1,217 @@
+package Engines;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many Elementary CA rules against the same random rows, on a pool of threads, and measures how each
+ * rule behaves. Every rule and trial is its own task, stepped with a {@link PackedElementaryRow} and stopped
+ * early by a {@link CycleDetector} once the row dies out, stops changing or repeats.
+ * Rows wrap around, so a rule that shifts its row is only seen to repeat once the row has moved all the way round
+ */
+public class ElementarySweep {
+    public static final String CSV_HEADER = "rule,trials,density,entropy,settled,transient,period";
+
+    public final int width;
+    public final long generations;
+    public final int trials;
+    public final long seed;
+
+    /**
+     * Metrics of one rule, averaged over its trials
+     */
+    public static class Result {
+        public final int ruleNumber;
+        public final int trials;
+        //Fraction of alive cells in the last generation stepped
+        public final double density;
+        //Shannon entropy of blocks of 3 cells in the last generation stepped, in bits per cell
+        public final double entropy;
+        //Fraction of trials that died out, stopped changing or repeated
+        public final double settled;
+        //Generations before the row settled, over the trials that settled, NaN if none did
+        public final double transientLength;
+        //Most common period over the trials that settled, 0 if none did
+        public final long period;
+
+        private Result(int ruleNumber, Trial[] results) {
+            this.ruleNumber = ruleNumber;
+            trials = results.length;
+
+            double densitySum = 0;
+            double entropySum = 0;
+            double transientSum = 0;
+            int settledCount = 0;
+            for (Trial trial : results) {
+                densitySum += trial.density;
+                entropySum += trial.entropy;
+                if (trial.period > 0) {
+                    transientSum += trial.onset;
+                    ++settledCount;
+                }
+            }
+
+            density = densitySum / trials;
+            entropy = entropySum / trials;
+            settled = (double) settledCount / trials;
+            transientLength = (settledCount == 0) ? Double.NaN : transientSum / settledCount;
+            period = mostCommonPeriod(results);
+        }
+
+        /**
+         * @return result as a line of CSV, in the columns of {@link #CSV_HEADER}
+         */
+        public String toCsv() {
+            return String.format(Locale.ROOT, "%d,%d,%.6f,%.6f,%.3f,%s,%s", ruleNumber, trials, density, entropy,
+                    settled, Double.isNaN(transientLength) ? "" : String.format(Locale.ROOT, "%.1f", transientLength),
+                    (period == 0) ? "" : Long.toString(period));
+        }
+    }
+
+    /**
+     * Metrics of one rule against one initial row
+     */
+    private static class Trial {
+        private double density;
+        private double entropy;
+        //Period and first repeated generation, or a period of 0 if the row never settled
+        private long period;
+        private long onset;
+    }
+
+    /**
+     * @param width       amount of cells in each row
+     * @param generations most generations each trial is stepped
+     * @param trials      amount of random rows each rule is run against
+     * @param seed        seed of the random rows, every rule gets the same rows
+     */
+    public ElementarySweep(int width, long generations, int trials, long seed) {
+        if (width < 1 || generations < 0 || trials < 1) {
+            throw new IllegalArgumentException("Width and trials must be positive, and generations can't be negative.");
+        }
+
+        this.width = width;
+        this.generations = generations;
+        this.trials = trials;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs every trial of every rule
+     *
+     * @param ruleNumbers rules to run, each in the range [0 - 255]
+     * @param threads     amount of threads to run trials on
+     * @return result of each rule, in the order given
+     */
+    public List<Result> run(int[] ruleNumbers, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<List<Future<Trial>>> futures = new ArrayList<>();
+            for (int ruleNumber : ruleNumbers) {
+                List<Future<Trial>> ruleFutures = new ArrayList<>();
+                for (int trial = 0; trial < trials; trial++) {
+                    final int trialIndex = trial;
+                    ruleFutures.add(pool.submit(() -> runTrial(ruleNumber, randomRow(trialIndex))));
+                }
+                futures.add(ruleFutures);
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < ruleNumbers.length; i++) {
+                Trial[] ruleTrials = new Trial[trials];
+                for (int trial = 0; trial < trials; trial++) {
+                    ruleTrials[trial] = futures.get(i).get(trial).get();
+                }
+                results.add(new Result(ruleNumbers[i], ruleTrials));
+            }
+
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Trial failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return row of a trial, each cell alive with a chance of 1/2
+     */
+    private byte[] randomRow(int trial) {
+        SplittableRandom random = new SplittableRandom(seed + trial);
+        byte[] row = new byte[width];
+        for (int i = 0; i < width; i++) {
+            row[i] = (byte) random.nextInt(2);
+        }
+
+        return row;
+    }
+
+    private Trial runTrial(int ruleNumber, byte[] initialState) {
+        PackedElementaryRow row = new PackedElementaryRow(ruleNumber, initialState);
+        CycleDetector cycles = new CycleDetector();
+        row.setHashing(true);
+
+        while (!cycles.record(row.getGeneration(), row.getHash()) && row.getGeneration() < generations) {
+            row.step();
+        }
+
+        Trial trial = new Trial();
+        row.copyStates(initialState);
+        trial.density = (double) row.population() / width;
+        trial.entropy = blockEntropy(initialState);
+        if (cycles.getOutcome() != CycleDetector.Outcome.RUNNING) {
+            trial.period = cycles.getPeriod();
+            trial.onset = cycles.getOnset();
+        }
+
+        return trial;
+    }
+
+    /**
+     * @return Shannon entropy of the blocks of 3 cells in a row, wrapped around, in bits per cell
+     */
+    static double blockEntropy(byte[] states) {
+        final int n = states.length;
+        long[] counts = new long[8];
+        int block = (states[Math.floorMod(n - 2, n)] << 1 | states[n - 1]) & 3;
+        for (int i = 0; i < n; i++) {
+            block = ((block << 1) | states[i]) & 7;
+            ++counts[block];
+        }
+
+        double entropy = 0;
+        for (long count : counts) {
+            if (count == 0) continue;
+
+            double p = (double) count / n;
+            entropy -= p * Math.log(p) / Math.log(2);
+        }
+
+        return entropy / 3;
+    }
+
+    private static long mostCommonPeriod(Trial[] results) {
+        long period = 0;
+        int best = 0;
+        for (Trial candidate : results) {
+            if (candidate.period == 0) continue;
+
+            int count = 0;
+            for (Trial trial : results) {
+                if (trial.period == candidate.period) ++count;
+            }
+            if (count > best || (count == best && candidate.period < period)) {
+                best = count;
+                period = candidate.period;
+            }
+        }
+
+        return period;
+    }
+}
@@ -0,0 +1,505 @@
+package Engines;
+
+import CAClassPackage.StateGrid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * HashLife engine for the Game Of Life, or any other {@link LifeLikeRule}.
+ * The plane is stored as a quadtree whose nodes are canonicalised, so identical regions are shared, and each node
+ * memoises the result of advancing its center. This lets {@link #advance(long)} jump ahead in powers of two.
+ * Unlike {@link PackedLifeGrid} the plane is unbounded, so patterns never wrap into themselves.
+ * The cache is collected whenever it passes its limit, even in the middle of a jump, but nodes still in use are never
+ * dropped, so the limit is soft: a pattern that needs more nodes than it allows grows past it
+ */
+public class HashLife {
+    //Default amount of nodes held before the cache is collected
+    public static final int DEFAULT_MAX_NODES = 1 << 22;
+    //Highest level the root may reach while coordinates still fit in a long
+    private static final int MAX_LEVEL = 60;
+
+    /**
+     * A square of 2^level by 2^level cells, made up of four quadrants one level lower
+     */
+    static final class Node {
+        final int level;
+        final Node nw;
+        final Node ne;
+        final Node sw;
+        final Node se;
+        final long population;
+        final long id;
+        private final int hash;
+        //Center of this node advanced 2^resultExponent generations
+        Node result;
+        int resultExponent = -1;
+        //Last collection this node was reached in
+        int mark;
+
+        //Leaf constructor
+        Node(long id, long population) {
+            this.level = 0;
+            this.nw = null;
+            this.ne = null;
+            this.sw = null;
+            this.se = null;
+            this.population = population;
+            this.id = id;
+            hash = Long.hashCode(id);
+        }
+
+        Node(long id, Node nw, Node ne, Node sw, Node se) {
+            this.level = nw.level + 1;
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            this.population = nw.population + ne.population + sw.population + se.population;
+            this.id = id;
+            hash = hash(nw, ne, sw, se);
+        }
+
+        static int hash(Node nw, Node ne, Node sw, Node se) {
+            long h = nw.id;
+            h = h * 0x9E3779B97F4A7C15L + ne.id;
+            h = h * 0x9E3779B97F4A7C15L + sw.id;
+            h = h * 0x9E3779B97F4A7C15L + se.id;
+            return Long.hashCode(h ^ (h >>> 29));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Node)) return false;
+            Node other = (Node) o;
+            //Children are canonical, so comparing them by identity is enough
+            return nw == other.nw && ne == other.ne && sw == other.sw && se == other.se;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final int maxNodes;
+    //Memoised results only hold for the rule they were stepped with, so it can't change
+    private final LifeLikeRule rule;
+    //Canonical table of every non-leaf node
+    private HashMap<Node, Node> nodes = new HashMap<>();
+    //Empty node of each level
+    private final ArrayList<Node> emptyNodes = new ArrayList<>();
+    private final Node dead;
+    private final Node alive;
+    private long nextId;
+    private int markEpoch;
+    private int collections;
+    //Nodes held by the successor() calls in progress, which a collection in the middle of a jump must keep
+    private final ArrayList<Node> held = new ArrayList<>();
+    //Amount of nodes the cache is collected at, raised when the nodes in use don't fit in maxNodes
+    private int collectAt;
+
+    private Node root;
+    //Coordinates of the root's top left cell
+    private long originRow;
+    private long originCol;
+    private long generation;
+
+    public HashLife() {
+        this(DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * @param maxNodes amount of nodes the cache may hold before it is collected
+     */
+    public HashLife(int maxNodes) {
+        this(maxNodes, LifeLikeRule.CONWAY);
+    }
+
+    /**
+     * @param maxNodes amount of nodes the cache may hold before it is collected
+     * @param rule     rule to step with
+     */
+    public HashLife(int maxNodes, LifeLikeRule rule) {
+        this.maxNodes = maxNodes;
+        this.rule = rule;
+        collectAt = maxNodes;
+        dead = new Node(nextId++, 0);
+        alive = new Node(nextId++, 1);
+        emptyNodes.add(dead);
+        root = empty(3);
+    }
+
+    /**
+     * Loads a 2 state grid, with its top left cell at row 0, col 0
+     */
+    public static HashLife fromStateGrid(StateGrid grid) {
+        return fromStateGrid(grid, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Loads a 2 state grid, with its top left cell at row 0, col 0
+     *
+     * @param maxNodes amount of nodes the cache may hold before it is collected
+     */
+    public static HashLife fromStateGrid(StateGrid grid, int maxNodes) {
+        return fromStateGrid(grid, maxNodes, LifeLikeRule.CONWAY);
+    }
+
+    /**
+     * Loads a 2 state grid, with its top left cell at row 0, col 0
+     *
+     * @param maxNodes amount of nodes the cache may hold before it is collected
+     * @param rule     rule to step with
+     */
+    public static HashLife fromStateGrid(StateGrid grid, int maxNodes, LifeLikeRule rule) {
+        HashLife life = new HashLife(maxNodes, rule);
+
+        int level = 3;
+        while ((1L << level) < Math.max(grid.numRows, grid.numCols)) ++level;
+
+        life.root = life.build(grid, level, 0, 0);
+        life.generation = grid.getGeneration();
+
+        return life;
+    }
+
+    private Node build(StateGrid grid, int level, int top, int left) {
+        //Region lies outside the grid
+        if (top >= grid.numRows || left >= grid.numCols) return empty(level);
+
+        if (level == 0) {
+            return (grid.getCells()[grid.index(top, left)] != 0) ? alive : dead;
+        }
+
+        int half = 1 << (level - 1);
+        return join(build(grid, level - 1, top, left), build(grid, level - 1, top, left + half),
+                build(grid, level - 1, top + half, left), build(grid, level - 1, top + half, left + half));
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public LifeLikeRule getRule() {
+        return rule;
+    }
+
+    public long population() {
+        return root.population;
+    }
+
+    /**
+     * @return amount of nodes currently held by the cache
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * @return amount of times the cache has been collected
+     */
+    public int getCollections() {
+        return collections;
+    }
+
+    /**
+     * @return state of the cell at the given coordinates, 0 anywhere outside the tracked region
+     */
+    public int get(long row, long col) {
+        long size = 1L << root.level;
+        row -= originRow;
+        col -= originCol;
+        if (row < 0 || col < 0 || row >= size || col >= size) return 0;
+
+        Node node = root;
+        while (node.level > 0) {
+            long half = 1L << (node.level - 1);
+            if (row < half) {
+                node = (col < half) ? node.nw : node.ne;
+            } else {
+                node = (col < half) ? node.sw : node.se;
+            }
+            row &= half - 1;
+            col &= half - 1;
+        }
+
+        return (int) node.population;
+    }
+
+    /**
+     * Copies a window of the plane into a grid, so it can be rendered or stepped by the other engines
+     *
+     * @param top  row of the window's top left cell
+     * @param left col of the window's top left cell
+     */
+    public StateGrid viewport(long top, long left, int numRows, int numCols) {
+        StateGrid grid = new StateGrid(numRows, numCols);
+        fill(grid, root, originRow, originCol, top, left);
+        grid.setGeneration(generation);
+
+        return grid;
+    }
+
+    private void fill(StateGrid grid, Node node, long nodeRow, long nodeCol, long top, long left) {
+        long size = 1L << node.level;
+        //Skip empty nodes, and nodes outside the window
+        if (node.population == 0
+                || nodeRow >= top + grid.numRows || nodeRow + size <= top
+                || nodeCol >= left + grid.numCols || nodeCol + size <= left) {
+            return;
+        }
+
+        if (node.level == 0) {
+            grid.set((int) (nodeRow - top), (int) (nodeCol - left), 1);
+            return;
+        }
+
+        long half = size >>> 1;
+        fill(grid, node.nw, nodeRow, nodeCol, top, left);
+        fill(grid, node.ne, nodeRow, nodeCol + half, top, left);
+        fill(grid, node.sw, nodeRow + half, nodeCol, top, left);
+        fill(grid, node.se, nodeRow + half, nodeCol + half, top, left);
+    }
+
+    /**
+     * Advances the plane by any number of generations, jumping once for each set bit of the count
+     */
+    public void advance(long generations) {
+        if (generations < 0) {
+            throw new IllegalArgumentException("Can only advance a positive amount of generations.");
+        }
+
+        for (int exponent = 0; generations != 0; exponent++, generations >>>= 1) {
+            if ((generations & 1) != 0) {
+                jump(exponent);
+                if (nodes.size() > collectAt) collect();
+            }
+        }
+    }
+
+    /**
+     * Advances the plane by 2^exponent generations
+     */
+    private void jump(int exponent) {
+        //Pad the root until the pattern can't grow past the result, even at one cell per generation
+        while (root.level < exponent + 3 || !isCentred(root)) {
+            if (root.level >= MAX_LEVEL) {
+                throw new IllegalStateException("Pattern has grown too large to advance.");
+            }
+            expand();
+        }
+
+        //Result is the center of the root, one level lower
+        long quarter = 1L << (root.level - 2);
+        root = successor(root, exponent);
+        originRow += quarter;
+        originCol += quarter;
+        generation += 1L << exponent;
+    }
+
+    /**
+     * Surrounds the root with empty space, keeping it in the center
+     */
+    private void expand() {
+        Node border = empty(root.level - 1);
+        long half = 1L << (root.level - 1);
+
+        root = join(join(border, border, border, root.nw),
+                join(border, border, root.ne, border),
+                join(border, root.sw, border, border),
+                join(root.se, border, border, border));
+        originRow -= half;
+        originCol -= half;
+    }
+
+    /**
+     * @return if all live cells of a node are inside the square a quarter of its width, at its center
+     */
+    private boolean isCentred(Node node) {
+        if (node.level < 3) return false;
+
+        return node.nw.population == node.nw.se.se.population
+                && node.ne.population == node.ne.sw.sw.population
+                && node.sw.population == node.sw.ne.ne.population
+                && node.se.population == node.se.nw.nw.population;
+    }
+
+    /**
+     * @return center of the node, one level lower, advanced min(2^exponent, 2^(level - 2)) generations
+     */
+    private Node successor(Node node, int exponent) {
+        exponent = Math.min(exponent, node.level - 2);
+        if (node.result != null && node.resultExponent == exponent) return node.result;
+
+        //Everything this call holds is kept by collections until its result is built
+        final int holding = held.size();
+        held.add(node);
+        if (nodes.size() > collectAt) collect();
+
+        Node result;
+        if (node.population == 0) {
+            result = empty(node.level - 1);
+        } else if (node.level == 2) {
+            result = step4x4(node);
+        } else {
+            //Nine overlapping sub squares, each advanced
+            Node c1 = hold(successor(node.nw, exponent));
+            Node c2 = hold(successor(join(node.nw.ne, node.ne.nw, node.nw.se, node.ne.sw), exponent));
+            Node c3 = hold(successor(node.ne, exponent));
+            Node c4 = hold(successor(join(node.nw.sw, node.nw.se, node.sw.nw, node.sw.ne), exponent));
+            Node c5 = hold(successor(join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw), exponent));
+            Node c6 = hold(successor(join(node.ne.sw, node.ne.se, node.se.nw, node.se.ne), exponent));
+            Node c7 = hold(successor(node.sw, exponent));
+            Node c8 = hold(successor(join(node.sw.ne, node.se.nw, node.sw.se, node.se.sw), exponent));
+            Node c9 = hold(successor(node.se, exponent));
+
+            if (exponent < node.level - 2) {
+                //Already advanced far enough, only take the centers
+                result = join(join(c1.se, c2.sw, c4.ne, c5.nw),
+                        join(c2.se, c3.sw, c5.ne, c6.nw),
+                        join(c4.se, c5.sw, c7.ne, c8.nw),
+                        join(c5.se, c6.sw, c8.ne, c9.nw));
+            } else {
+                //Advance a second time
+                Node nw = hold(successor(join(c1, c2, c4, c5), exponent));
+                Node ne = hold(successor(join(c2, c3, c5, c6), exponent));
+                Node sw = hold(successor(join(c4, c5, c7, c8), exponent));
+                Node se = hold(successor(join(c5, c6, c8, c9), exponent));
+                result = join(nw, ne, sw, se);
+            }
+        }
+
+        node.result = result;
+        node.resultExponent = exponent;
+        held.subList(holding, held.size()).clear();
+
+        return result;
+    }
+
+    private Node hold(Node node) {
+        held.add(node);
+        return node;
+    }
+
+    /**
+     * @return center 2x2 of a 4x4 node after one generation
+     */
+    private Node step4x4(Node node) {
+        //Pack the 16 cells into bits, row major
+        int bits = 0;
+        Node[] quadrants = {node.nw, node.ne, node.sw, node.se};
+        for (int q = 0; q < 4; q++) {
+            Node quadrant = quadrants[q];
+            int row = (q >>> 1) * 2;
+            int col = (q & 1) * 2;
+            bits |= (int) quadrant.nw.population << (row * 4 + col);
+            bits |= (int) quadrant.ne.population << (row * 4 + col + 1);
+            bits |= (int) quadrant.sw.population << ((row + 1) * 4 + col);
+            bits |= (int) quadrant.se.population << ((row + 1) * 4 + col + 1);
+        }
+
+        return join(nextCell(bits, 1, 1), nextCell(bits, 1, 2), nextCell(bits, 2, 1), nextCell(bits, 2, 2));
+    }
+
+    private Node nextCell(int bits, int row, int col) {
+        int numAlive = 0;
+        for (int nestRow = row - 1; nestRow <= row + 1; nestRow++) {
+            for (int nestCol = col - 1; nestCol <= col + 1; nestCol++) {
+                if (!(nestCol == col && nestRow == row)) numAlive += (bits >>> (nestRow * 4 + nestCol)) & 1;
+            }
+        }
+        boolean isAlive = ((bits >>> (row * 4 + col)) & 1) != 0;
+
+        return rule.isAlive(isAlive, numAlive) ? alive : dead;
+    }
+
+    /**
+     * @return canonical node made of four quadrants
+     */
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        Node probe = new Node(nextId, nw, ne, sw, se);
+        Node existing = nodes.putIfAbsent(probe, probe);
+        if (existing != null) return existing;
+
+        ++nextId;
+        return probe;
+    }
+
+    /**
+     * @return canonical empty node of a level
+     */
+    private Node empty(int level) {
+        while (emptyNodes.size() <= level) {
+            Node below = emptyNodes.get(emptyNodes.size() - 1);
+            emptyNodes.add(join(below, below, below, below));
+        }
+
+        return emptyNodes.get(level);
+    }
+
+    /**
+     * Drops every node that neither the root nor a jump in progress can reach, keeping the memoised results of the
+     * nodes that are kept, so the next jumps over the same areas aren't worked out again.
+     * If that doesn't free at least half the limit, the results are dropped too, keeping only the nodes in use.
+     * If even those don't fit, the limit is raised to twice them, so the cache isn't collected over and over
+     */
+    private void collect() {
+        markFromRoots(true);
+        if (countMarked() > maxNodes / 2) markFromRoots(false);
+
+        HashMap<Node, Node> kept = new HashMap<>();
+        for (Node node : nodes.values()) {
+            if (node.mark != markEpoch) continue;
+
+            if (node.result != null && node.result.mark != markEpoch) {
+                node.result = null;
+                node.resultExponent = -1;
+            }
+            kept.put(node, node);
+        }
+
+        nodes = kept;
+        collectAt = Math.max(maxNodes, 2 * nodes.size());
+        ++collections;
+    }
+
+    /**
+     * Marks the nodes reachable from the root, the nodes held by jumps in progress and the empty nodes
+     *
+     * @param withResults if the memoised results of marked nodes are marked too
+     */
+    private void markFromRoots(boolean withResults) {
+        ++markEpoch;
+        mark(root, withResults);
+        for (Node node : held) {
+            mark(node, withResults);
+        }
+        for (Node node : emptyNodes) {
+            node.mark = markEpoch;
+        }
+    }
+
+    private int countMarked() {
+        int count = 0;
+        for (Node node : nodes.values()) {
+            if (node.mark == markEpoch) ++count;
+        }
+
+        return count;
+    }
+
+    private void mark(Node node, boolean withResults) {
+        if (node.mark == markEpoch) return;
+
+        node.mark = markEpoch;
+        if (node.level > 0) {
+            mark(node.nw, withResults);
+            mark(node.ne, withResults);
+            mark(node.sw, withResults);
+            mark(node.se, withResults);
+        }
+        //Results are a level below their node, so following them can't recurse without end
+        if (withResults && node.result != null) mark(node.result, true);
+    }
+}
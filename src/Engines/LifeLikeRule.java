@@ -0,0 +1,151 @@
+package Engines;
+
+import CAClassPackage.IllegalInitialStateException;
+
+import java.util.Locale;
+
+/**
+ * Outer-totalistic 2 state rule in B/S notation, such as B3/S23 for the Game Of Life or B36/S23 for HighLife.
+ * A dead cell is born when its amount of alive neighbors is listed after the B, and an alive cell survives when
+ * its amount is listed after the S.
+ * The rule is compiled into data the engines read in their hot loops instead of branching on it: a 512 entry
+ * table indexed by the 3x3 neighborhood's bits for byte per cell grids, and masks of all 0's or all 1's for each
+ * neighbor count for bit-packed grids.
+ * Rules with B0 are refused, as they turn empty space alive, which the engines that skip empty areas can't follow
+ */
+public class LifeLikeRule {
+    public static final LifeLikeRule CONWAY = new LifeLikeRule(1 << 3, 1 << 2 | 1 << 3);
+
+    //Bit k is set if a cell with k alive neighbors is born, or survives
+    public final int birth;
+    public final int survival;
+    //Next state of each 3x3 neighborhood, indexed by columns from neighborhoodIndex()
+    final byte[] table = new byte[512];
+    //All 1's if a cell with that many alive neighbors is born, or survives, for bit-packed engines
+    final long[] birthMasks = new long[9];
+    final long[] survivalMasks = new long[9];
+
+    private LifeLikeRule(int birth, int survival) {
+        this.birth = birth;
+        this.survival = survival;
+
+        for (int count = 0; count <= 8; count++) {
+            birthMasks[count] = (((birth >>> count) & 1) == 1) ? -1L : 0;
+            survivalMasks[count] = (((survival >>> count) & 1) == 1) ? -1L : 0;
+        }
+
+        for (int neighborhood = 0; neighborhood < table.length; neighborhood++) {
+            //The center is the middle bit of the middle column
+            boolean alive = ((neighborhood >>> 4) & 1) == 1;
+            int count = Integer.bitCount(neighborhood) - (alive ? 1 : 0);
+            table[neighborhood] = (byte) (isAlive(alive, count) ? 1 : 0);
+        }
+    }
+
+    /**
+     * Parses a rule in B/S notation, such as "B36/S23", or the older S/B notation, such as "23/36"
+     *
+     * @throws IllegalInitialStateException If the rule isn't valid, or has B0
+     */
+    public static LifeLikeRule parse(String rule) throws IllegalInitialStateException {
+        String[] parts = rule.replace(" ", "").toUpperCase(Locale.ROOT).split("/", -1);
+        if (parts.length != 2) {
+            throw new IllegalInitialStateException("Rule \"" + rule + "\" must be in B/S notation, such as B3/S23.");
+        }
+
+        int birth;
+        int survival;
+        if (parts[0].startsWith("B") && parts[1].startsWith("S")) {
+            birth = parseCounts(parts[0].substring(1), rule);
+            survival = parseCounts(parts[1].substring(1), rule);
+        } else if (parts[0].startsWith("S") && parts[1].startsWith("B")) {
+            survival = parseCounts(parts[0].substring(1), rule);
+            birth = parseCounts(parts[1].substring(1), rule);
+        } else {
+            //S/B notation without letters
+            survival = parseCounts(parts[0], rule);
+            birth = parseCounts(parts[1], rule);
+        }
+
+        if ((birth & 1) == 1) {
+            throw new IllegalInitialStateException("Rules with B0 aren't supported.");
+        }
+
+        return (birth == CONWAY.birth && survival == CONWAY.survival) ? CONWAY : new LifeLikeRule(birth, survival);
+    }
+
+    /**
+     * @return bit k set for each digit k listed
+     */
+    private static int parseCounts(String counts, String rule) throws IllegalInitialStateException {
+        int bits = 0;
+        for (char digit : counts.toCharArray()) {
+            if (digit < '0' || digit > '8') {
+                throw new IllegalInitialStateException("Rule \"" + rule + "\" can only list neighbor counts 0 to 8.");
+            }
+            bits |= 1 << (digit - '0');
+        }
+
+        return bits;
+    }
+
+    /**
+     * @return if a cell is alive next generation
+     */
+    public boolean isAlive(boolean alive, int count) {
+        return (((alive ? survival : birth) >>> count) & 1) == 1;
+    }
+
+    /**
+     * @return bits of one column of a neighborhood, the cells above, at and below a row
+     */
+    public static int column(int above, int middle, int below) {
+        return above | middle << 1 | below << 2;
+    }
+
+    /**
+     * @return index in the table of a 3x3 neighborhood, given its columns from {@link #column}
+     */
+    public static int neighborhoodIndex(int west, int middle, int east) {
+        return west << 6 | middle << 3 | east;
+    }
+
+    /**
+     * @return next state of the center of a 3x3 neighborhood, given its index from {@link #neighborhoodIndex}
+     */
+    public int lookup(int neighborhood) {
+        return table[neighborhood];
+    }
+
+    public boolean isConway() {
+        return this == CONWAY;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof LifeLikeRule
+                && ((LifeLikeRule) other).birth == birth && ((LifeLikeRule) other).survival == survival;
+    }
+
+    @Override
+    public int hashCode() {
+        return birth * 512 + survival;
+    }
+
+    /**
+     * @return rule in B/S notation
+     */
+    @Override
+    public String toString() {
+        StringBuilder rule = new StringBuilder("B");
+        for (int count = 0; count <= 8; count++) {
+            if (((birth >>> count) & 1) == 1) rule.append(count);
+        }
+        rule.append("/S");
+        for (int count = 0; count <= 8; count++) {
+            if (((survival >>> count) & 1) == 1) rule.append(count);
+        }
+
+        return rule.toString();
+    }
+}
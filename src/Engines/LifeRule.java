@@ -0,0 +1,59 @@
+package Engines;
+
+import CAClassPackage.StateGrid;
+
+/**
+ * Game Of Life, or any other {@link LifeLikeRule}, stepped one byte per cell on a StateGrid.
+ * Slower than {@link PackedLifeGrid}, but follows every edge mode of the grid
+ */
+public class LifeRule {
+    /**
+     * Generates the next B3/S23 generation of a 2 state grid into the grid's back buffer, then swaps it in
+     *
+     * @param grid Grid holding the past generation
+     */
+    public static void step(StateGrid grid) {
+        step(grid, LifeLikeRule.CONWAY);
+    }
+
+    /**
+     * Generates the next generation of a 2 state grid into the grid's back buffer, then swaps it in
+     *
+     * @param grid Grid holding the past generation
+     * @param rule Rule to step with
+     */
+    public static void step(StateGrid grid, LifeLikeRule rule) {
+        final int stride = grid.stride;
+        final byte[] table = rule.table;
+        byte[] past = grid.getCells();
+        byte[] next = grid.getNextCells();
+        grid.refreshHalo();
+
+        for (int row = 0; row < grid.numRows; row++) {
+            //Neighbors past the edges are read from the halo
+            int from = grid.index(row, 0);
+            int to = from + grid.numCols;
+
+            /*
+            Build neighborhood, a column at a time. Moving east shifts the oldest column out of the index,
+            so each cell only reads the one new column
+             */
+            int neighborhood = LifeLikeRule.neighborhoodIndex(0,
+                    LifeLikeRule.column(past[from - stride - 1], past[from - 1], past[from + stride - 1]),
+                    LifeLikeRule.column(past[from - stride], past[from], past[from + stride]));
+
+            for (int i = from; i < to; i++) {
+                int east = LifeLikeRule.column(past[i - stride + 1], past[i + 1], past[i + stride + 1]);
+                neighborhood = ((neighborhood << 3) | east) & 511;
+
+                /*
+                Update status of current cell
+                 */
+                next[i] = table[neighborhood];
+            }
+        }
+
+        grid.hashChanges(0, grid.numRows, 0, grid.numCols);
+        grid.swap();
+    }
+}
@@ -0,0 +1,314 @@
+package Engines;
+
+import CAClassPackage.IllegalInitialStateException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Shape of the neighborhood a 2D rule table looks at, as a list of row and col offsets from the center.
+ * The center always comes first, and rule tables key each neighborhood by the states of its cells in this order.
+ * Built in shapes list their cells ring by ring, each ring clockwise from north, so von Neumann is C, N, E, S, W
+ * and Moore is C, N, NE, E, SE, S, SW, W, NW, as in Golly.
+ * Hexagonal cells are drawn on the square grid skewed, with the NE and SW cells left out.
+ * Steppers compile the offsets against the stride of a padded grid, so every shape is stepped by the same gather loop
+ */
+public class Neighborhood {
+    //Most cells a neighborhood may hold, as rule tables over more cells are too large even with 2 states
+    public static final int MAX_SIZE = 25;
+    //Largest radii whose neighborhoods fit in MAX_SIZE cells, a Moore radius of 2 has 25 and one of 3 has 49,
+    //a von Neumann radius of 3 has 25 and one of 4 has 41
+    private static final int MOORE_MAX_RADIUS = 2;
+    private static final int VON_NEUMANN_MAX_RADIUS = 3;
+
+    private final String name;
+    //Offset of each cell from the center, the center first
+    private final int[] rowOffsets;
+    private final int[] colOffsets;
+    //Furthest any cell is from the center along a row or col, grids need a halo at least this wide
+    public final int radius;
+    //Where each cell moves to under each rotation the shape is the same under, the identity first
+    private final int[][] rotations;
+
+    private Neighborhood(String name, List<int[]> cells, boolean hexagonal) {
+        if (cells.size() + 1 > MAX_SIZE) {
+            throw new IllegalArgumentException("Neighborhoods can have at most " + MAX_SIZE + " cells.");
+        }
+
+        this.name = name;
+        rowOffsets = new int[cells.size() + 1];
+        colOffsets = new int[cells.size() + 1];
+        int furthest = 0;
+        for (int i = 0; i < cells.size(); i++) {
+            int[] cell = cells.get(i);
+            if (cell[0] == 0 && cell[1] == 0) {
+                throw new IllegalArgumentException("The center is always the first cell of a neighborhood.");
+            }
+            for (int j = 0; j < i; j++) {
+                if (Arrays.equals(cells.get(j), cell)) {
+                    throw new IllegalArgumentException("Neighborhood has the cell " + cell[0] + "," + cell[1] + " twice.");
+                }
+            }
+
+            rowOffsets[i + 1] = cell[0];
+            colOffsets[i + 1] = cell[1];
+            furthest = Math.max(furthest, Math.max(Math.abs(cell[0]), Math.abs(cell[1])));
+        }
+        radius = furthest;
+        rotations = findRotations(hexagonal);
+    }
+
+    /**
+     * @return the 4 orthogonal neighbors
+     */
+    public static Neighborhood vonNeumann() {
+        return vonNeumann(1);
+    }
+
+    /**
+     * @return every cell within a Manhattan distance of radius
+     */
+    public static Neighborhood vonNeumann(int radius) {
+        List<int[]> cells = new ArrayList<>();
+        for (int ring = 1; ring <= radius; ring++) {
+            for (int dr = -ring; dr <= ring; dr++) {
+                int dc = ring - Math.abs(dr);
+                cells.add(new int[]{dr, dc});
+                if (dc != 0) cells.add(new int[]{dr, -dc});
+            }
+        }
+
+        return ringsClockwise((radius == 1) ? "vonneumann" : "vonneumann:" + radius, cells, false);
+    }
+
+    /**
+     * @return the 8 surrounding cells
+     */
+    public static Neighborhood moore() {
+        return moore(1);
+    }
+
+    /**
+     * @return every cell within a Chebyshev distance of radius
+     */
+    public static Neighborhood moore(int radius) {
+        List<int[]> cells = new ArrayList<>();
+        for (int dr = -radius; dr <= radius; dr++) {
+            for (int dc = -radius; dc <= radius; dc++) {
+                if (dr != 0 || dc != 0) cells.add(new int[]{dr, dc});
+            }
+        }
+
+        return ringsClockwise((radius == 1) ? "moore" : "moore:" + radius, cells, true);
+    }
+
+    /**
+     * @return the 6 neighbors of a hexagonal cell, in the order N, E, SE, S, W, NW
+     */
+    public static Neighborhood hexagonal() {
+        List<int[]> cells = new ArrayList<>();
+        int[] rows = {-1, 0, 1, 1, 0, -1};
+        int[] cols = {0, 1, 1, 0, -1, -1};
+        for (int i = 0; i < rows.length; i++) {
+            cells.add(new int[]{rows[i], cols[i]});
+        }
+
+        return new Neighborhood("hexagonal", cells, true);
+    }
+
+    /**
+     * Parses a neighborhood: "vonneumann" or "moore", optionally followed by ":radius", "hexagonal", or a list of
+     * the row,col offsets of each neighbor in table order, such as "-1,0 0,1 1,0 0,-1"
+     *
+     * @throws IllegalInitialStateException If the neighborhood isn't valid
+     */
+    public static Neighborhood parse(String neighborhood) throws IllegalInitialStateException {
+        String trimmed = neighborhood.trim().toLowerCase(Locale.ROOT).replace(" ", "");
+        String[] named = trimmed.split(":", 2);
+        try {
+            int radius = (named.length == 2) ? Integer.parseInt(named[1]) : 1;
+            switch (named[0]) {
+                case "vonneumann": {
+                    checkRadius("Von Neumann", radius, VON_NEUMANN_MAX_RADIUS);
+                    return vonNeumann(radius);
+                }
+                case "moore": {
+                    checkRadius("Moore", radius, MOORE_MAX_RADIUS);
+                    return moore(radius);
+                }
+                case "hexagonal": {
+                    if (named.length == 2) throw new IllegalInitialStateException("Hexagonal neighborhoods have no radius.");
+                    return hexagonal();
+                }
+                default: {
+                    //List of offsets
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalInitialStateException("Invalid neighborhood radius: " + neighborhood);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalInitialStateException(e.getMessage());
+        }
+
+        List<int[]> cells = new ArrayList<>();
+        for (String cell : neighborhood.trim().split("[\\s;]+")) {
+            String[] pair = cell.split(",");
+            try {
+                if (pair.length != 2) throw new NumberFormatException();
+                cells.add(new int[]{Integer.parseInt(pair[0].trim()), Integer.parseInt(pair[1].trim())});
+            } catch (NumberFormatException e) {
+                throw new IllegalInitialStateException("Neighborhood \"" + neighborhood
+                        + "\" must be vonneumann, moore, hexagonal, or row,col offsets such as -1,0 0,1 1,0 0,-1.");
+            }
+        }
+
+        try {
+            return new Neighborhood(neighborhood.trim(), cells, false);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalInitialStateException(e.getMessage());
+        }
+    }
+
+    private static void checkRadius(String shape, int radius, int maxRadius) throws IllegalInitialStateException {
+        if (radius < 1 || radius > maxRadius) {
+            throw new IllegalInitialStateException(shape + " neighborhood radius must be in the range [1 - "
+                    + maxRadius + "].");
+        }
+    }
+
+    /**
+     * Sorts cells ring by ring, each ring clockwise from north
+     *
+     * @param chebyshev if rings are measured as squares, instead of diamonds
+     */
+    private static Neighborhood ringsClockwise(String name, List<int[]> cells, boolean chebyshev) {
+        cells.sort((a, b) -> {
+            int ringA = chebyshev ? Math.max(Math.abs(a[0]), Math.abs(a[1])) : Math.abs(a[0]) + Math.abs(a[1]);
+            int ringB = chebyshev ? Math.max(Math.abs(b[0]), Math.abs(b[1])) : Math.abs(b[0]) + Math.abs(b[1]);
+            if (ringA != ringB) return Integer.compare(ringA, ringB);
+
+            return Double.compare(clockwiseAngle(a), clockwiseAngle(b));
+        });
+
+        return new Neighborhood(name, cells, false);
+    }
+
+    /**
+     * @return angle of a cell clockwise from north, in [0, 2pi)
+     */
+    private static double clockwiseAngle(int[] cell) {
+        double angle = Math.atan2(cell[1], -cell[0]);
+        return (angle < 0) ? angle + 2 * Math.PI : angle;
+    }
+
+    /**
+     * @return amount of cells, the center included
+     */
+    public int size() {
+        return rowOffsets.length;
+    }
+
+    public int rowOffset(int cell) {
+        return rowOffsets[cell];
+    }
+
+    public int colOffset(int cell) {
+        return colOffsets[cell];
+    }
+
+    /**
+     * @param stride distance between rows of the padded grid
+     * @return distance of each cell from the center in the grid's buffer, the center first
+     */
+    public int[] offsets(int stride) {
+        int[] offsets = new int[size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = rowOffsets[i] * stride + colOffsets[i];
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Offsets of the runs of 8 cells that cover every neighbor of a block of 8 cells, each row covered by
+     * runs from its leftmost to its rightmost neighbor, overlapping at the end
+     *
+     * @param stride distance between rows of the padded grid
+     * @return offset of each run from the first cell of the block
+     */
+    int[] blockOffsets(int stride) {
+        List<Integer> runs = new ArrayList<>();
+        //The block's own row first, as it is the most likely to be busy, then rows further and further out
+        for (int ring = 0; ring <= 2 * radius; ring++) {
+            int dr = (ring % 2 == 0) ? ring / 2 : -(ring + 1) / 2;
+            int from = Integer.MAX_VALUE;
+            int to = Integer.MIN_VALUE;
+            for (int i = 0; i < size(); i++) {
+                if (rowOffsets[i] != dr) continue;
+                from = Math.min(from, colOffsets[i]);
+                to = Math.max(to, colOffsets[i]);
+            }
+            if (from > to) continue;
+
+            //The block's neighbors in this row are cols [from, to + 8)
+            for (int col = from; col < to; col += 8) {
+                runs.add(dr * stride + col);
+            }
+            runs.add(dr * stride + to);
+        }
+
+        return runs.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return for each rotation the shape is the same under, the cell each cell moves to, the identity first
+     */
+    public int[][] rotations() {
+        return rotations;
+    }
+
+    /**
+     * Finds the turns by quarters, or sixths for hexagonal cells, the shape is the same under
+     */
+    private int[][] findRotations(boolean hexagonal) {
+        final int turns = hexagonal ? 6 : 4;
+        List<int[]> found = new ArrayList<>();
+        int[] rows = rowOffsets.clone();
+        int[] cols = colOffsets.clone();
+
+        for (int turn = 0; turn < turns; turn++) {
+            int[] moves = new int[size()];
+            boolean same = true;
+            for (int i = 0; i < size() && same; i++) {
+                moves[i] = indexOf(rows[i], cols[i]);
+                same = moves[i] != -1;
+            }
+            //Shapes can be the same under only some turns, such as half turns
+            if (same) found.add(moves);
+
+            //Turn every cell clockwise once more, skewed hexagonal cells turn N -> E -> SE -> S -> W -> NW
+            for (int i = 0; i < size(); i++) {
+                int row = rows[i];
+                rows[i] = cols[i];
+                cols[i] = hexagonal ? cols[i] - row : -row;
+            }
+        }
+
+        return found.toArray(new int[0][]);
+    }
+
+    private int indexOf(int row, int col) {
+        for (int i = 0; i < size(); i++) {
+            if (rowOffsets[i] == row && colOffsets[i] == col) return i;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,180 @@
+package Engines;
+
+import CAClassPackage.ZobristHash;
+
+/**
+ * Elementary CA engine that packs 64 cells into each long.
+ * Bit i of word w holds the cell at index 64w + i, and the row wraps around like the Elementary CA.
+ * Any of the 256 Wolfram rules is evaluated a word at a time, with a tree of bitwise multiplexers whose
+ * inputs are all 0's or all 1's depending on the bits of the rule number
+ */
+public class PackedElementaryRow {
+    public final int width;
+    public final int ruleNumber;
+    //Amount of longs the row takes up
+    private final int numWords;
+    //Mask of the cells that exist in the last word
+    private final long lastWordMask;
+    //Output for each neighborhood, all 1's if the rule sets it alive, indexed by left * 4 + center * 2 + right
+    private final long[] ruleMasks = new long[8];
+    private long[] cells;
+    private long[] nextCells;
+    private long generation;
+    //Zobrist hash of the current generation, only kept up to date while hashing is on
+    private boolean hashing;
+    private long hash;
+
+    /**
+     * @param ruleNumber Wolfram rule number in the range [0 - 255]
+     * @param initialState state of each cell, 0 or 1
+     */
+    public PackedElementaryRow(int ruleNumber, byte[] initialState) {
+        if (ruleNumber < 0 || ruleNumber > 255) {
+            throw new IllegalArgumentException("Must input number in the range [0 - 255]");
+        }
+
+        this.ruleNumber = ruleNumber;
+        width = initialState.length;
+        numWords = (width + 63) >>> 6;
+        lastWordMask = ((width & 63) == 0) ? -1L : (1L << (width & 63)) - 1;
+        cells = new long[numWords];
+        nextCells = new long[numWords];
+
+        for (int i = 0; i < ruleMasks.length; i++) {
+            ruleMasks[i] = (((ruleNumber >>> i) & 1) == 1) ? -1L : 0;
+        }
+
+        for (int i = 0; i < width; i++) {
+            if (initialState[i] != 0) cells[i >>> 6] |= 1L << i;
+        }
+    }
+
+    public int get(int index) {
+        return (int) (cells[index >>> 6] >>> index) & 1;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public boolean isHashing() {
+        return hashing;
+    }
+
+    /**
+     * Turns on keeping a {@link ZobristHash} of the current generation, updated a word at a time from the words
+     * that change, so rows with many changing cells stay cheap to hash
+     */
+    public void setHashing(boolean hashing) {
+        this.hashing = hashing;
+        if (hashing) hash = hashChanges(new long[numWords], cells);
+    }
+
+    /**
+     * @return Zobrist hash of the current generation, if hashing is on
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return XOR of the old and new keys of the words that differ between two buffers
+     */
+    private static long hashChanges(long[] before, long[] after) {
+        long change = 0;
+        for (int word = 0; word < after.length; word++) {
+            if (before[word] != after[word]) {
+                change ^= ZobristHash.wordKey(word, before[word]) ^ ZobristHash.wordKey(word, after[word]);
+            }
+        }
+
+        return change;
+    }
+
+    /**
+     * @return state of every cell, one byte per cell
+     */
+    public byte[] toStates() {
+        byte[] states = new byte[width];
+        copyStates(states);
+
+        return states;
+    }
+
+    /**
+     * Unpacks the state of each cell into an existing array, at least width long
+     */
+    public void copyStates(byte[] states) {
+        for (int word = 0; word < cells.length; word++) {
+            long bits = cells[word];
+            int base = word << 6;
+            int end = Math.min(64, width - base);
+            for (int bit = 0; bit < end; bit++) {
+                states[base + bit] = (byte) ((bits >>> bit) & 1);
+            }
+        }
+    }
+
+    /**
+     * @return amount of alive cells
+     */
+    public long population() {
+        long population = 0;
+        for (long word : cells) {
+            population += Long.bitCount(word);
+        }
+
+        return population;
+    }
+
+    /**
+     * Advances the row by a number of generations
+     */
+    public void step(long generations) {
+        for (long i = 0; i < generations; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Advances the row by one generation
+     */
+    public void step() {
+        final int last = numWords - 1;
+        //Cells that wrap around the row
+        final long firstCell = cells[0] & 1;
+        final long lastCell = (cells[last] >>> ((width - 1) & 63)) & 1;
+        final long m0 = ruleMasks[0], m1 = ruleMasks[1], m2 = ruleMasks[2], m3 = ruleMasks[3];
+        final long m4 = ruleMasks[4], m5 = ruleMasks[5], m6 = ruleMasks[6], m7 = ruleMasks[7];
+
+        for (int word = 0; word <= last; word++) {
+            long center = cells[word];
+            long left = (center << 1) | ((word == 0) ? lastCell : cells[word - 1] >>> 63);
+            long right = (center >>> 1) | ((word == last) ? firstCell << ((width - 1) & 63) : cells[word + 1] << 63);
+
+            //Select the rule's output for each cell, by right, then center, then left
+            long r0 = mux(right, m1, m0);
+            long r1 = mux(right, m3, m2);
+            long r2 = mux(right, m5, m4);
+            long r3 = mux(right, m7, m6);
+            long c0 = mux(center, r1, r0);
+            long c1 = mux(center, r3, r2);
+            long next = mux(left, c1, c0);
+
+            nextCells[word] = (word == last) ? next & lastWordMask : next;
+        }
+
+        if (hashing) hash ^= hashChanges(cells, nextCells);
+        long[] temp = cells;
+        cells = nextCells;
+        nextCells = temp;
+        ++generation;
+    }
+
+    /**
+     * @return bits of ifSet where select is 1, and bits of ifClear where select is 0
+     */
+    private static long mux(long select, long ifSet, long ifClear) {
+        return (select & ifSet) | (~select & ifClear);
+    }
+}
@@ -0,0 +1,332 @@
+package Engines;
+
+import CAClassPackage.StateGrid;
+import CAClassPackage.ZobristHash;
+
+/**
+ * Game Of Life engine that packs 64 cells into each long.
+ * Bit i of word w in a row holds the cell in column 64w + i. Neighbors are counted for a whole word
+ * at once with bitwise full adders, keeping the toroidal wrap of {@link StateGrid}. Any {@link LifeLikeRule}
+ * can be followed, picked for each bit by a tree of selects over the bits of the count, B3/S23 by default.
+ * Only tiles of 64x64 cells near cells that changed last generation are stepped
+ */
+public class PackedLifeGrid {
+    public final int numRows;
+    public final int numCols;
+    //Amount of longs each row takes up
+    private final int wordsPerRow;
+    //Mask of the columns that exist in the last word of each row
+    private final long lastWordMask;
+    private long[] cells;
+    private long[] nextCells;
+    private long generation;
+    //Tiles of TILE_ROWS rows by one word that changed last generation
+    private final ActiveTiles tiles;
+    private static final int TILE_ROWS = 64;
+    //Zobrist hash of the current generation, only kept up to date while hashing is on
+    private boolean hashing;
+    private long hash;
+    private final LifeLikeRule rule;
+    //B3/S23 has a shorter formula than the select trees
+    private final boolean conway;
+
+    public PackedLifeGrid(int numRows, int numCols) {
+        this(numRows, numCols, LifeLikeRule.CONWAY);
+    }
+
+    public PackedLifeGrid(int numRows, int numCols, LifeLikeRule rule) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        wordsPerRow = (numCols + 63) >>> 6;
+        lastWordMask = ((numCols & 63) == 0) ? -1L : (1L << (numCols & 63)) - 1;
+        cells = new long[numRows * wordsPerRow];
+        nextCells = new long[numRows * wordsPerRow];
+        tiles = new ActiveTiles(numRows, wordsPerRow, TILE_ROWS, 1);
+        this.rule = rule;
+        conway = rule.isConway();
+    }
+
+    /**
+     * Packs the current generation of a 2 state grid
+     */
+    public static PackedLifeGrid fromStateGrid(StateGrid grid) {
+        return fromStateGrid(grid, LifeLikeRule.CONWAY);
+    }
+
+    /**
+     * Packs the current generation of a 2 state grid, to be stepped with a rule
+     */
+    public static PackedLifeGrid fromStateGrid(StateGrid grid, LifeLikeRule rule) {
+        PackedLifeGrid packed = new PackedLifeGrid(grid.numRows, grid.numCols, rule);
+        byte[] states = grid.getCells();
+
+        for (int row = 0; row < grid.numRows; row++) {
+            for (int col = 0; col < grid.numCols; col++) {
+                if (states[grid.index(row, col)] != 0) packed.set(row, col, 1);
+            }
+        }
+        packed.generation = grid.getGeneration();
+
+        return packed;
+    }
+
+    /**
+     * Unpacks the current generation into a grid of the same size
+     */
+    public void copyInto(StateGrid grid) {
+        byte[] states = grid.getCells();
+
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                states[grid.index(row, col)] = (byte) get(row, col);
+            }
+        }
+        grid.setGeneration(generation);
+        if (grid.isHashing()) grid.setHashing(true);
+    }
+
+    public int get(int row, int col) {
+        return (int) (cells[row * wordsPerRow + (col >>> 6)] >>> col) & 1;
+    }
+
+    public void set(int row, int col, int state) {
+        int word = row * wordsPerRow + (col >>> 6);
+        if (hashing && get(row, col) != ((state == 0) ? 0 : 1)) {
+            hash ^= ZobristHash.key((long) row * numCols + col, 1);
+        }
+        if (state == 0) {
+            cells[word] &= ~(1L << col);
+        } else {
+            cells[word] |= 1L << col;
+        }
+        tiles.markChanged(row, col >>> 6);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public LifeLikeRule getRule() {
+        return rule;
+    }
+
+    public boolean isHashing() {
+        return hashing;
+    }
+
+    /**
+     * Turns on keeping a {@link ZobristHash} of the current generation, updated from the cells that change.
+     * Gives the same hash as a StateGrid holding the same cells
+     */
+    public void setHashing(boolean hashing) {
+        this.hashing = hashing;
+        if (hashing) hash = hashChanges(null, cells, 0, numRows, 0, wordsPerRow);
+    }
+
+    /**
+     * @return Zobrist hash of the current generation, if hashing is on
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return amount of alive cells
+     */
+    public long population() {
+        long population = 0;
+        for (long word : cells) {
+            population += Long.bitCount(word);
+        }
+
+        return population;
+    }
+
+    /**
+     * Advances the grid by a number of generations
+     */
+    public void step(long generations) {
+        for (long i = 0; i < generations; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Advances the grid by one generation
+     */
+    public void step() {
+        tiles.step(numRows, wordsPerRow, this::stepRegion, null);
+        hashChanges();
+        swap();
+    }
+
+    /**
+     * Advances the grid by one generation, with bands of tiles stepped in parallel.
+     * Gives the same result as {@link #step()}
+     */
+    public void step(ParallelStepper stepper) {
+        tiles.step(numRows, wordsPerRow, this::stepRegion, stepper);
+        hashChanges();
+        swap();
+    }
+
+    /**
+     * @return amount of tiles stepped in the last generation
+     */
+    public int getActiveTileCount() {
+        return tiles.getActiveCount();
+    }
+
+    public int getTileCount() {
+        return tiles.getTileCount();
+    }
+
+    /**
+     * Generates the words in rows [fromRow, toRow) and words [fromWord, toWord) of the next generation
+     *
+     * @return if any of the cells changed state
+     */
+    private boolean stepRegion(int fromRow, int toRow, int fromWord, int toWord) {
+        final int last = wordsPerRow - 1;
+        final long[] birth = rule.birthMasks;
+        final long[] survival = rule.survivalMasks;
+        long changes = 0;
+
+        for (int row = fromRow; row < toRow; row++) {
+            //Offsets of the rows above and below, wrapped across the grid
+            int above = ((row == 0) ? numRows - 1 : row - 1) * wordsPerRow;
+            int middle = row * wordsPerRow;
+            int below = ((row == numRows - 1) ? 0 : row + 1) * wordsPerRow;
+
+            for (int word = fromWord; word < toWord; word++) {
+                long aC = cells[above + word];
+                long aW = west(above, word);
+                long aE = east(above, word);
+                long bC = cells[middle + word];
+                long bW = west(middle, word);
+                long bE = east(middle, word);
+                long cC = cells[below + word];
+                long cW = west(below, word);
+                long cE = east(below, word);
+
+                /*
+                Count neighbors, each bit of the count lives in its own word
+                 */
+                //Row above and below each add up to 3, as a 2 bit number
+                long a1 = aW ^ aC ^ aE;
+                long a2 = (aW & aC) | (aE & (aW ^ aC));
+                long c1 = cW ^ cC ^ cE;
+                long c2 = (cW & cC) | (cE & (cW ^ cC));
+                //Middle row adds up to 2, the cell itself isn't a neighbor
+                long b1 = bW ^ bE;
+                long b2 = bW & bE;
+
+                //Add the ones
+                long ones = a1 ^ b1 ^ c1;
+                long onesCarry = (a1 & b1) | (c1 & (a1 ^ b1));
+                //Add the twos, along with the carry from the ones
+                long twosSum = a2 ^ b2 ^ c2;
+                long twosCarry = (a2 & b2) | (c2 & (a2 ^ b2));
+                long twos = twosSum ^ onesCarry;
+                long fours = twosCarry ^ (twosSum & onesCarry);
+
+                long alive;
+                if (conway) {
+                    //Alive with 3 neighbors, or alive with 2 neighbors and already alive
+                    alive = twos & ~fours & (ones | bC);
+                } else {
+                    //A count of 8 is the only one with its eights bit set
+                    long eights = twosCarry & twosSum & onesCarry;
+                    alive = (bC & select(survival, ones, twos, fours, eights))
+                            | (~bC & select(birth, ones, twos, fours, eights));
+                }
+
+                if (word == last) alive &= lastWordMask;
+                nextCells[middle + word] = alive;
+                changes |= alive ^ bC;
+            }
+        }
+
+        return changes != 0;
+    }
+
+    /**
+     * Picks, for each bit, the mask of its neighbor count, with the count given one binary digit per word
+     *
+     * @param masks all 0's or all 1's for each count from 0 to 8
+     */
+    private static long select(long[] masks, long ones, long twos, long fours, long eights) {
+        long upTo1 = (masks[0] & ~ones) | (masks[1] & ones);
+        long upTo3 = (masks[2] & ~ones) | (masks[3] & ones);
+        long upTo5 = (masks[4] & ~ones) | (masks[5] & ones);
+        long upTo7 = (masks[6] & ~ones) | (masks[7] & ones);
+        long low = (upTo1 & ~twos) | (upTo3 & twos);
+        long high = (upTo5 & ~twos) | (upTo7 & twos);
+        long upTo7Count = (low & ~fours) | (high & fours);
+
+        return (upTo7Count & ~eights) | (masks[8] & eights);
+    }
+
+    /**
+     * Folds the cells that differ between the current and next generation into the hash, if hashing is on
+     */
+    private void hashChanges() {
+        if (!hashing) return;
+
+        //Tiles that didn't change hold the same cells in both buffers
+        tiles.forEachChanged(numRows, wordsPerRow, (fromRow, toRow, fromWord, toWord) ->
+                hash ^= hashChanges(cells, nextCells, fromRow, toRow, fromWord, toWord));
+    }
+
+    /**
+     * @param before words to compare against, or null for all dead cells
+     * @return XOR of the keys of the cells in rows [fromRow, toRow) and words [fromWord, toWord) that
+     * differ between two buffers
+     */
+    private long hashChanges(long[] before, long[] after, int fromRow, int toRow, int fromWord, int toWord) {
+        long change = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            for (int word = fromWord; word < toWord; word++) {
+                int index = row * wordsPerRow + word;
+                long diff = (before == null) ? after[index] : before[index] ^ after[index];
+
+                while (diff != 0) {
+                    int col = (word << 6) + Long.numberOfTrailingZeros(diff);
+                    change ^= ZobristHash.key((long) row * numCols + col, 1);
+                    diff &= diff - 1;
+                }
+            }
+        }
+
+        return change;
+    }
+
+    private void swap() {
+        long[] temp = cells;
+        cells = nextCells;
+        nextCells = temp;
+        ++generation;
+    }
+
+    /**
+     * @return word holding the west neighbor of each cell in a word, wrapped across the row
+     */
+    private long west(int rowOffset, int word) {
+        long carry = (word == 0)
+                ? (cells[rowOffset + wordsPerRow - 1] >>> ((numCols - 1) & 63)) & 1
+                : cells[rowOffset + word - 1] >>> 63;
+
+        return (cells[rowOffset + word] << 1) | carry;
+    }
+
+    /**
+     * @return word holding the east neighbor of each cell in a word, wrapped across the row
+     */
+    private long east(int rowOffset, int word) {
+        long carry = (word == wordsPerRow - 1)
+                ? (cells[rowOffset] & 1) << ((numCols - 1) & 63)
+                : cells[rowOffset + word + 1] << 63;
+
+        return (cells[rowOffset + word] >>> 1) | carry;
+    }
+}
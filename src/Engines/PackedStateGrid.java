@@ -0,0 +1,547 @@
+package Engines;
+
+import CAClassPackage.EdgeMode;
+import CAClassPackage.StateGrid;
+import CAClassPackage.ZobristHash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Grid for automatas with few states, packing each cell into 1, 2 or 4 bits of a long instead of a byte,
+ * picked from the amount of states. Cell i of word w in a row holds the cell in column w * cellsPerWord + i.
+ * The grid is only ever read and written in its packed form: each tile of TILE_ROWS x TILE_COLS cells is
+ * unpacked, along with the cells around it, into a small byte window stepped by a {@link RuleTable} as usual,
+ * then packed back. The window stays in the cache, so memory traffic shrinks with the bits per cell.
+ * Edges follow an {@link EdgeMode} as in {@link StateGrid}, and only tiles near cells that changed last
+ * generation are stepped
+ */
+public class PackedStateGrid {
+    //Amount of rows and cols of cells in each tile, a tile is a whole amount of words across
+    public static final int TILE_ROWS = 8;
+    public static final int TILE_COLS = 64;
+    //Reads and writes 8 cells of a window as one long, cell i in byte i
+    private static final VarHandle EIGHT_CELLS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    public final int numRows;
+    public final int numCols;
+    public final int numStates;
+    public final int bitsPerCell;
+    private final int cellsPerWord;
+    //Cols are turned into words by shifting instead of dividing. Shifts of a long only use the lowest 6 bits
+    //of the distance, so col * bitsPerCell is already the cell's shift within its word
+    private final int wordShift;
+    //Amount of longs each row takes up
+    private final int wordsPerRow;
+    //Mask of the bits of one cell
+    private final long cellMask;
+    private long[] cells;
+    private long[] nextCells;
+    private long generation;
+    private EdgeMode edgeMode = EdgeMode.TOROIDAL;
+    //State of the cells past the edges in FIXED mode
+    private byte fixedState;
+    //Tiles of TILE_ROWS x TILE_COLS cells that changed last generation, measured in words across
+    private final ActiveTiles tiles;
+    //Window each thread unpacks its tiles into, reused every generation
+    private final ThreadLocal<Window> windows = new ThreadLocal<>();
+    //Zobrist hash of the current generation, only kept up to date while hashing is on
+    private boolean hashing;
+    private long hash;
+
+    /**
+     * Byte grid the size of a tile that a thread unpacks tiles into
+     */
+    private static final class Window {
+        //Halo at least 8 cells wide, as the cells on either side of a tile are unpacked 8 at a time
+        final StateGrid grid;
+        //For each row of the window, bit i set if word i of the row, from the word before the tile, isn't all 0
+        final int[] busy;
+        //Rows of the window unpacked for the tile being stepped
+        final boolean[] unpacked;
+        //For each row of the tile, bit i set if word i of the row has a neighbor that isn't 0
+        final int[] active = new int[TILE_ROWS];
+
+        Window(int radius) {
+            grid = new StateGrid(TILE_ROWS, TILE_COLS, Math.max(8, radius));
+            busy = new int[TILE_ROWS + 2 * grid.halo];
+            unpacked = new boolean[TILE_ROWS + 2 * grid.halo];
+        }
+    }
+
+    /**
+     * @param numStates amount of states cells can be in, at most 16
+     */
+    public PackedStateGrid(int numRows, int numCols, int numStates) {
+        bitsPerCell = bitsPerCell(numStates);
+        if (bitsPerCell == 0) throw new IllegalArgumentException("Only grids of at most 16 states can be packed.");
+
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.numStates = numStates;
+        cellsPerWord = 64 / bitsPerCell;
+        wordShift = Integer.numberOfTrailingZeros(cellsPerWord);
+        wordsPerRow = (numCols + cellsPerWord - 1) / cellsPerWord;
+        cellMask = (1L << bitsPerCell) - 1;
+        cells = new long[numRows * wordsPerRow];
+        nextCells = new long[numRows * wordsPerRow];
+        tiles = new ActiveTiles(numRows, wordsPerRow, TILE_ROWS, TILE_COLS / cellsPerWord);
+    }
+
+    /**
+     * @return bits each cell is packed into for an amount of states, or 0 if there are too many states to pack
+     */
+    public static int bitsPerCell(int numStates) {
+        if (numStates <= 2) return 1;
+        if (numStates <= 4) return 2;
+        if (numStates <= 16) return 4;
+
+        return 0;
+    }
+
+    /**
+     * Packs the current generation of a grid, along with its edge mode
+     *
+     * @param numStates amount of states cells can be in, at most 16
+     */
+    public static PackedStateGrid fromStateGrid(StateGrid grid, int numStates) {
+        PackedStateGrid packed = new PackedStateGrid(grid.numRows, grid.numCols, numStates);
+        byte[] states = grid.getCells();
+
+        for (int row = 0; row < grid.numRows; row++) {
+            int offset = grid.index(row, 0);
+            for (int col = 0; col < grid.numCols; col++) {
+                packed.set(row, col, states[offset + col]);
+            }
+        }
+        packed.generation = grid.getGeneration();
+        packed.edgeMode = grid.getEdgeMode();
+        packed.fixedState = (byte) grid.getFixedState();
+
+        return packed;
+    }
+
+    /**
+     * Unpacks the current generation into a grid of the same size
+     */
+    public void copyInto(StateGrid grid) {
+        byte[] states = grid.getCells();
+
+        for (int row = 0; row < numRows; row++) {
+            int offset = grid.index(row, 0);
+            for (int col = 0; col < numCols; col++) {
+                states[offset + col] = (byte) get(row, col);
+            }
+        }
+        grid.setGeneration(generation);
+        if (grid.isHashing()) grid.setHashing(true);
+    }
+
+    public int get(int row, int col) {
+        return (int) (cells[row * wordsPerRow + (col >>> wordShift)] >>> (col * bitsPerCell) & cellMask);
+    }
+
+    public void set(int row, int col, int state) {
+        int word = row * wordsPerRow + (col >>> wordShift);
+        int shift = col * bitsPerCell;
+        if (hashing) hash ^= ZobristHash.key((long) row * numCols + col, get(row, col))
+                ^ ZobristHash.key((long) row * numCols + col, state);
+        cells[word] = (cells[word] & ~(cellMask << shift)) | ((long) state << shift);
+        tiles.markChanged(row, col >>> wordShift);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public EdgeMode getEdgeMode() {
+        return edgeMode;
+    }
+
+    public void setEdgeMode(EdgeMode edgeMode) {
+        this.edgeMode = edgeMode;
+        tiles.markAllChanged();
+    }
+
+    /**
+     * @param fixedState state of the cells past the edges in FIXED mode
+     */
+    public void setFixedState(int fixedState) {
+        this.fixedState = (byte) fixedState;
+        tiles.markAllChanged();
+    }
+
+    public boolean isHashing() {
+        return hashing;
+    }
+
+    /**
+     * Turns on keeping a {@link ZobristHash} of the current generation, updated from the cells that change.
+     * Gives the same hash as a StateGrid holding the same cells
+     */
+    public void setHashing(boolean hashing) {
+        this.hashing = hashing;
+        if (hashing) hash = hashChanges(null, cells, 0, numRows, 0, wordsPerRow);
+    }
+
+    /**
+     * @return Zobrist hash of the current generation, if hashing is on
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return amount of cells in a non-zero state
+     */
+    public long population() {
+        long population = 0;
+        for (long word : cells) {
+            population += Long.bitCount(nonZeroCells(word));
+        }
+
+        return population;
+    }
+
+    /**
+     * @return amount of tiles stepped in the last generation
+     */
+    public int getActiveTileCount() {
+        return tiles.getActiveCount();
+    }
+
+    public int getTileCount() {
+        return tiles.getTileCount();
+    }
+
+    /**
+     * Generates the next generation with a rule table, then swaps it in
+     */
+    public void step(RuleTable rules) {
+        step(rules, null);
+    }
+
+    /**
+     * Generates the next generation with a rule table, with bands of tiles stepped in parallel, then swaps it in.
+     * Gives the same result as stepping an unpacked grid with the same table
+     *
+     * @param stepper stepper to spread rows of tiles over, or null to step on this thread
+     * @throws IllegalArgumentException If the table has more states than the grid can hold, or its neighborhood
+     *                                  reaches further than a tile
+     */
+    public void step(RuleTable rules, ParallelStepper stepper) {
+        if (rules.numStates > 1 << bitsPerCell) {
+            throw new IllegalArgumentException("Rule table has more states than the grid can hold.");
+        }
+        if (rules.neighborhood.radius > TILE_ROWS) {
+            throw new IllegalArgumentException("Neighborhood " + rules.neighborhood + " is too wide for a packed grid.");
+        }
+
+        tiles.step(numRows, wordsPerRow,
+                (fromRow, toRow, fromWord, toWord) -> stepTile(rules, fromRow, toRow, fromWord, toWord), stepper);
+        if (hashing) {
+            //Tiles that didn't change hold the same cells in both buffers
+            tiles.forEachChanged(numRows, wordsPerRow, (fromRow, toRow, fromWord, toWord) ->
+                    hash ^= hashChanges(cells, nextCells, fromRow, toRow, fromWord, toWord));
+        }
+
+        long[] temp = cells;
+        cells = nextCells;
+        nextCells = temp;
+        ++generation;
+    }
+
+    /**
+     * Steps the cells in rows [fromRow, toRow) and words [fromWord, toWord): unpacks them, and every cell within
+     * the neighborhood's radius of them, into this thread's window, steps it, then packs the next generation back.
+     * If the all 0 neighborhood stays 0, words whose rows and neighboring words are all 0 are written as 0
+     * without being unpacked, so quiet areas cost little more than reading them
+     *
+     * @return if any of the cells changed state
+     */
+    private boolean stepTile(RuleTable rules, int fromRow, int toRow, int fromWord, int toWord) {
+        final int radius = rules.neighborhood.radius;
+        Window window = windows.get();
+        if (window == null || window.grid.halo < radius) {
+            window = new Window(radius);
+            windows.set(window);
+        }
+
+        final StateGrid grid = window.grid;
+        final int fromCol = fromWord * cellsPerWord;
+        final int toCol = Math.min(toWord * cellsPerWord, numCols);
+        final int rows = toRow - fromRow;
+        final int allWords = (1 << (toWord - fromWord)) - 1;
+        byte[] past = grid.getCells();
+        byte[] next = grid.getNextCells();
+
+        //Quiet words can only be found from the words on either side if every neighbor lies in them
+        if (!rules.keepsQuiet() || radius > cellsPerWord || fromCol < radius || toCol + radius > numCols) {
+            for (int row = -radius; row < rows + radius; row++) {
+                unpackRow(fromRow + row, fromCol, toCol, radius, past, grid.index(row, 0));
+            }
+            boolean changed = rules.stepRegion(grid, 0, rows, 0, toCol - fromCol);
+            for (int row = 0; row < rows; row++) {
+                packRow(next, grid.index(row, 0), fromRow + row, fromWord, toWord, allWords);
+            }
+
+            return changed;
+        }
+
+        int[] busy = window.busy;
+        boolean[] unpacked = window.unpacked;
+        for (int row = -radius; row < rows + radius; row++) {
+            busy[row + radius] = busyWords(fromRow + row, fromWord, toWord);
+            unpacked[row + radius] = false;
+        }
+
+        //Words of each row to step, a row is all 0's if it has none
+        int[] active = window.active;
+        for (int row = 0; row < rows; row++) {
+            int near = 0;
+            for (int k = row; k <= row + 2 * radius; k++) {
+                near |= busy[k];
+            }
+            //Word fromWord + i is active if any of bits i to i + 2 of its rows are
+            active[row] = (near | near >>> 1 | near >>> 2) & allWords;
+        }
+
+        boolean changed = false;
+        for (int row = 0, end; row < rows; row = end) {
+            //Rows with the same active words are stepped together
+            end = row + 1;
+            while (end < rows && active[end] == active[row]) ++end;
+
+            if (active[row] == 0) {
+                for (int quiet = row; quiet < end; quiet++) {
+                    int rowOffset = (fromRow + quiet) * wordsPerRow;
+                    Arrays.fill(nextCells, rowOffset + fromWord, rowOffset + toWord, 0);
+                }
+                continue;
+            }
+
+            for (int k = row; k < end + 2 * radius; k++) {
+                if (unpacked[k]) continue;
+                unpackRow(fromRow + k - radius, fromCol, toCol, radius, past, grid.index(k - radius, 0));
+                unpacked[k] = true;
+            }
+            //Step each run of active words
+            for (int rest = active[row]; rest != 0; ) {
+                int first = Integer.numberOfTrailingZeros(rest);
+                int last = first + Integer.numberOfTrailingZeros(~(rest >>> first));
+                changed |= rules.stepRegion(grid, row, end, first * cellsPerWord, last * cellsPerWord);
+                rest &= -1 << last;
+            }
+            for (int stepped = row; stepped < end; stepped++) {
+                packRow(next, grid.index(stepped, 0), fromRow + stepped, fromWord, toWord, active[row]);
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return bit i set if word fromWord - 1 + i of a row isn't all 0, for words [fromWord - 1, toWord]
+     * inside the grid. Rows past the edges are read following the edge mode
+     */
+    private int busyWords(int row, int fromWord, int toWord) {
+        if (row < 0 || row >= numRows) {
+            if (edgeMode == EdgeMode.FIXED) return (fixedState == 0) ? 0 : -1;
+            row = edgeSource(row, numRows);
+        }
+
+        final int rowOffset = row * wordsPerRow;
+        int busy = 0;
+        for (int word = fromWord - 1; word <= toWord; word++) {
+            if (cells[rowOffset + word] != 0) busy |= 1 << (word - fromWord + 1);
+        }
+
+        return busy;
+    }
+
+    /**
+     * Writes the cells in cols [fromCol - radius, toCol + radius) of a row into a window, the cell at fromCol
+     * at offset. Rows and cols past the edges are read following the edge mode.
+     * The window's halo must be at least 8 cells wide, as the cells on either side are written 8 at a time
+     */
+    private void unpackRow(int row, int fromCol, int toCol, int radius, byte[] into, int offset) {
+        if (row < 0 || row >= numRows) {
+            if (edgeMode == EdgeMode.FIXED) {
+                Arrays.fill(into, offset - radius, offset + toCol - fromCol + radius, fixedState);
+                return;
+            }
+            row = edgeSource(row, numRows);
+        }
+
+        final int rowOffset = row * wordsPerRow;
+        //Groups of 8 cells that lie inside the grid, fromCol starts a word so no group is split across words
+        int from = (radius <= 8 && fromCol >= 8) ? fromCol - 8 : fromCol;
+        int to = (radius <= 8 && toCol + 8 <= numCols) ? toCol + 8 : toCol;
+        int col = from;
+        for (; col + 8 <= to; col += 8) {
+            long group = cells[rowOffset + (col >>> wordShift)] >>> (col * bitsPerCell);
+            EIGHT_CELLS.set(into, offset + col - fromCol, spread(group));
+        }
+        for (; col < toCol; col++) {
+            into[offset + col - fromCol] = (byte) (cells[rowOffset + (col >>> wordShift)] >>> (col * bitsPerCell) & cellMask);
+        }
+
+        //Cells on either side that weren't in a group
+        for (int k = Math.max(1, fromCol - from + 1); k <= radius; k++) {
+            into[offset - k] = edgeCell(row, fromCol - k);
+        }
+        for (int k = Math.max(1, to - toCol + 1); k <= radius; k++) {
+            into[offset + toCol - fromCol - 1 + k] = edgeCell(row, toCol - 1 + k);
+        }
+    }
+
+    /**
+     * Packs the cells of words [fromWord, toWord) of a row of the next generation from a window, the cell at
+     * the start of fromWord at offset
+     *
+     * @param active bit i set if word fromWord + i was stepped, other words are written as 0
+     */
+    private void packRow(byte[] from, int offset, int row, int fromWord, int toWord, int active) {
+        final int rowOffset = row * wordsPerRow;
+        final int fromCol = fromWord * cellsPerWord;
+
+        for (int word = fromWord; word < toWord; word++) {
+            if ((active >>> (word - fromWord) & 1) == 0) {
+                nextCells[rowOffset + word] = 0;
+                continue;
+            }
+
+            int col = word * cellsPerWord;
+            int end = Math.min(col + cellsPerWord, numCols);
+            long packed = 0;
+            int shift = 0;
+            for (; col + 8 <= end; col += 8, shift += 8 * bitsPerCell) {
+                packed |= gather((long) EIGHT_CELLS.get(from, offset + col - fromCol)) << shift;
+            }
+            //Cols past the end of the grid stay 0
+            for (; col < end; col++, shift += bitsPerCell) {
+                packed |= (long) from[offset + col - fromCol] << shift;
+            }
+            nextCells[rowOffset + word] = packed;
+        }
+    }
+
+    /**
+     * @param group 8 cells of bitsPerCell bits each in its lowest bits, any bits above them are ignored
+     * @return the 8 cells one per byte
+     */
+    private long spread(long group) {
+        switch (bitsPerCell) {
+            case 1: {
+                group &= 0xFFL;
+                group = (group | group << 28) & 0x0000000F0000000FL;
+                group = (group | group << 14) & 0x0003000300030003L;
+                return (group | group << 7) & 0x0101010101010101L;
+            }
+            case 2: {
+                group &= 0xFFFFL;
+                group = (group | group << 24) & 0x000000FF000000FFL;
+                group = (group | group << 12) & 0x000F000F000F000FL;
+                return (group | group << 6) & 0x0303030303030303L;
+            }
+            default: {
+                group &= 0xFFFFFFFFL;
+                group = (group | group << 16) & 0x0000FFFF0000FFFFL;
+                group = (group | group << 8) & 0x00FF00FF00FF00FFL;
+                return (group | group << 4) & 0x0F0F0F0F0F0F0F0FL;
+            }
+        }
+    }
+
+    /**
+     * Reverse of {@link #spread}, every byte must hold a state that fits in bitsPerCell bits
+     *
+     * @return 8 cells packed into 8 * bitsPerCell bits
+     */
+    private long gather(long bytes) {
+        switch (bitsPerCell) {
+            case 1: {
+                bytes = (bytes | bytes >>> 7) & 0x0003000300030003L;
+                bytes = (bytes | bytes >>> 14) & 0x0000000F0000000FL;
+                return (bytes | bytes >>> 28) & 0xFFL;
+            }
+            case 2: {
+                bytes = (bytes | bytes >>> 6) & 0x000F000F000F000FL;
+                bytes = (bytes | bytes >>> 12) & 0x000000FF000000FFL;
+                return (bytes | bytes >>> 24) & 0xFFFFL;
+            }
+            default: {
+                bytes = (bytes | bytes >>> 4) & 0x00FF00FF00FF00FFL;
+                bytes = (bytes | bytes >>> 8) & 0x0000FFFF0000FFFFL;
+                return (bytes | bytes >>> 16) & 0xFFFFFFFFL;
+            }
+        }
+    }
+
+    /**
+     * @return word with the lowest bit of each cell set if the cell isn't 0
+     */
+    private long nonZeroCells(long word) {
+        switch (bitsPerCell) {
+            case 1: {
+                return word;
+            }
+            case 2: {
+                return (word | word >>> 1) & 0x5555555555555555L;
+            }
+            default: {
+                word |= word >>> 1;
+                return (word | word >>> 2) & 0x1111111111111111L;
+            }
+        }
+    }
+
+    /**
+     * @return state of a cell of a row inside the grid, following the edge mode for cols past the edges
+     */
+    private byte edgeCell(int row, int col) {
+        if (col < 0 || col >= numCols) {
+            if (edgeMode == EdgeMode.FIXED) return fixedState;
+            col = edgeSource(col, numCols);
+        }
+
+        return (byte) get(row, col);
+    }
+
+    /**
+     * @return row or col inside the grid that a row or col past its edge copies, wrapping or reflecting
+     */
+    private int edgeSource(int position, int size) {
+        return (edgeMode == EdgeMode.REFLECTING)
+                ? Math.max(0, Math.min(position, size - 1))
+                : Math.floorMod(position, size);
+    }
+
+    /**
+     * @param before words to compare against, or null for all 0 cells
+     * @return XOR of the old and new keys of the cells in rows [fromRow, toRow) and words [fromWord, toWord)
+     * that differ between two buffers
+     */
+    private long hashChanges(long[] before, long[] after, int fromRow, int toRow, int fromWord, int toWord) {
+        long change = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            for (int word = fromWord; word < toWord; word++) {
+                int index = row * wordsPerRow + word;
+                long old = (before == null) ? 0 : before[index];
+                long diff = old ^ after[index];
+
+                while (diff != 0) {
+                    int shift = Long.numberOfTrailingZeros(diff) / bitsPerCell * bitsPerCell;
+                    long cell = (long) row * numCols + (long) word * cellsPerWord + shift / bitsPerCell;
+                    change ^= ZobristHash.key(cell, (int) (old >>> shift & cellMask))
+                            ^ ZobristHash.key(cell, (int) (after[index] >>> shift & cellMask));
+                    diff &= ~(cellMask << shift);
+                }
+            }
+        }
+
+        return change;
+    }
+}
@@ -0,0 +1,105 @@
+package Engines;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a grid into bands of rows and steps them on a ForkJoinPool.
+ * Every cell of the next generation only reads the past generation, so the bands can be stepped in any order
+ * and give the same result as stepping the rows one after another
+ */
+public class ParallelStepper implements AutoCloseable {
+    //System property that sets the parallelism of the default stepper
+    public static final String PARALLELISM_PROPERTY = "ca.parallelism";
+    //Smallest amount of work, in cells, worth handing to another thread
+    private static final int MIN_CELLS_PER_TASK = 1 << 14;
+
+    /**
+     * Steps the rows in [fromRow, toRow) of a generation
+     */
+    public interface RowBand {
+        void step(int fromRow, int toRow);
+    }
+
+    public final int parallelism;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism amount of threads to step with
+     */
+    public ParallelStepper(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+
+        this.parallelism = parallelism;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @return stepper shared by the GUI automatas, using the parallelism set by {@link #PARALLELISM_PROPERTY},
+     * or one thread per processor
+     */
+    public static ParallelStepper getDefault() {
+        return DefaultHolder.STEPPER;
+    }
+
+    //Creates the default stepper the first time it's used
+    private static class DefaultHolder {
+        private static final ParallelStepper STEPPER = new ParallelStepper(
+                Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Steps every row of a generation, returning once all bands are done
+     *
+     * @param numRows  amount of rows in the grid
+     * @param rowWidth amount of cells in each row, used to size the bands
+     */
+    public void forEachBand(int numRows, int rowWidth, RowBand band) {
+        //Make bands big enough to be worth a task, but leave a few per thread for balancing
+        int minRows = Math.max(1, MIN_CELLS_PER_TASK / Math.max(1, rowWidth));
+        int grain = Math.max(minRows, numRows / (parallelism * 4));
+
+        if (parallelism == 1 || numRows <= grain) {
+            band.step(0, numRows);
+        } else {
+            pool.invoke(new BandTask(band, 0, numRows, grain));
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Halves its rows until they fit in one band
+     */
+    private static class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowBand band;
+        private final int fromRow;
+        private final int toRow;
+        private final int grain;
+
+        BandTask(RowBand band, int fromRow, int toRow, int grain) {
+            this.band = band;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= grain) {
+                band.step(fromRow, toRow);
+                return;
+            }
+
+            int middle = (fromRow + toRow) >>> 1;
+            invokeAll(new BandTask(band, fromRow, middle, grain), new BandTask(band, middle, toRow, grain));
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package Engines;
+
+import CAClassPackage.IllegalInitialStateException;
+import CAClassPackage.StateGrid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rule table for 2D CA's, compiled from a rule table file into a dense array.
+ * Each line of the file holds the states of the cells of a {@link Neighborhood}, in its order, followed by
+ * the center's next state. For the default von Neumann neighborhood that is the center, north, east, south
+ * and west cells. Every rotation the neighborhood's shape is the same under shares the same rule.
+ * A neighborhood of k cells with states (x0, x1, ..., xk-1) is looked up at index x0*S^(k-1) + x1*S^(k-2) + ... + xk-1,
+ * for S states, gathered through offsets compiled against the grid's stride.
+ */
+public class RuleTable {
+    //Marks neighborhoods without a rule
+    private static final byte MISSING = -1;
+    //Reads and writes 8 cells of a byte buffer as one long
+    private static final VarHandle EIGHT_CELLS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    //Most entries a table may have
+    public static final int MAX_TABLE_SIZE = 1 << 26;
+    //Most neighbors gathered from locals, larger neighborhoods are gathered in a loop
+    private static final int UNROLLED_NEIGHBORS = 8;
+
+    public final Neighborhood neighborhood;
+    public final int numStates;
+    //State given to cells whose neighborhood has no rule
+    public final int defaultState;
+    private final byte[] table;
+    //Which neighborhoods have been looked up without a rule
+    private final boolean[] missed;
+    //Counted from every thread stepping with this table
+    private final LongAdder misses = new LongAdder();
+    //Offsets of the neighborhood compiled for the stride of the last grid stepped
+    private volatile CompiledOffsets compiled;
+
+    /**
+     * Neighborhood offsets compiled against the stride of a grid, shared by every thread stepping that grid
+     */
+    private static final class CompiledOffsets {
+        final int stride;
+        final int[] cells;
+        //Offsets of the neighbors, without the center, at the end of UNROLLED_NEIGHBORS slots
+        final int[] slots = new int[UNROLLED_NEIGHBORS];
+        //Runs of 8 cells covering the neighbors of a block of 8 cells, for neighborhoods wider than radius 1
+        final int[] blocks;
+        //If a radius 1 neighborhood has cells on the diagonals
+        final boolean diagonals;
+
+        CompiledOffsets(Neighborhood neighborhood, int stride) {
+            this.stride = stride;
+            cells = neighborhood.offsets(stride);
+            blocks = neighborhood.blockOffsets(stride);
+            boolean corners = false;
+            for (int cell = 1; cell < neighborhood.size(); cell++) {
+                corners |= neighborhood.rowOffset(cell) != 0 && neighborhood.colOffset(cell) != 0;
+            }
+            diagonals = corners;
+            if (cells.length - 1 <= UNROLLED_NEIGHBORS) {
+                System.arraycopy(cells, 1, slots, UNROLLED_NEIGHBORS - (cells.length - 1), cells.length - 1);
+            }
+        }
+    }
+
+    public RuleTable(int numStates, int defaultState) {
+        this(Neighborhood.vonNeumann(), numStates, defaultState);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the table would have more than {@link #MAX_TABLE_SIZE} entries
+     */
+    public RuleTable(Neighborhood neighborhood, int numStates, int defaultState) {
+        this.neighborhood = neighborhood;
+        this.numStates = numStates;
+        this.defaultState = defaultState;
+
+        long size = 1;
+        for (int i = 0; i < neighborhood.size() && size <= MAX_TABLE_SIZE; i++) {
+            size *= numStates;
+        }
+        if (size > MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException("A rule table for " + numStates + " states over a "
+                    + neighborhood.size() + " cell neighborhood would be too large.");
+        }
+        table = new byte[(int) size];
+        missed = new boolean[(int) size];
+        Arrays.fill(table, MISSING);
+    }
+
+    /**
+     * Reads in a von Neumann rule table file, and puts every rotation of each rule into the table
+     *
+     * @param numStates    amount of states cells can be in
+     * @param defaultState state given to cells whose neighborhood has no rule
+     */
+    public static RuleTable compile(File ruleTableFile, int numStates, int defaultState)
+            throws FileNotFoundException, IllegalInitialStateException {
+        return compile(ruleTableFile, Neighborhood.vonNeumann(), numStates, defaultState);
+    }
+
+    /**
+     * Reads in a rule table file, and puts every rotation of each rule into the table
+     *
+     * @param neighborhood cells each rule lists the states of
+     * @param numStates    amount of states cells can be in
+     * @param defaultState state given to cells whose neighborhood has no rule
+     */
+    public static RuleTable compile(File ruleTableFile, Neighborhood neighborhood, int numStates, int defaultState)
+            throws FileNotFoundException, IllegalInitialStateException {
+        RuleTable ruleTable = new RuleTable(neighborhood, numStates, defaultState);
+        final int size = neighborhood.size();
+
+        try (Scanner fin = new Scanner(new FileInputStream(ruleTableFile))) {
+            while (fin.hasNextLine()) {
+                String rule = fin.nextLine();
+                if (rule.isBlank()) continue;
+
+                if (rule.length() < size + 1) {
+                    throw new IllegalInitialStateException("Rule \"" + rule + "\" must have " + (size + 1) + " states.");
+                }
+
+                int[] states = new int[size + 1];
+                for (int i = 0; i < states.length; i++) {
+                    states[i] = rule.charAt(i) - '0';
+                    if (states[i] < 0 || states[i] >= numStates) {
+                        throw new IllegalInitialStateException("Rule \"" + rule + "\" has an invalid state.");
+                    }
+                }
+
+                //Each rotation of the neighborhood, each cell's state moved to where the cell turns to
+                int[] rotated = new int[size];
+                for (int[] moves : neighborhood.rotations()) {
+                    for (int i = 0; i < size; i++) {
+                        rotated[moves[i]] = states[i];
+                    }
+                    ruleTable.put(rotated, states[size]);
+                }
+            }
+        }
+
+        return ruleTable;
+    }
+
+    /**
+     * @param states state of each cell of the neighborhood, in its order
+     * @return index of a neighborhood in the table
+     */
+    public int index(int[] states) {
+        int index = 0;
+        for (int state : states) {
+            index = index * numStates + state;
+        }
+
+        return index;
+    }
+
+    public void put(int[] states, int next) {
+        table[index(states)] = (byte) next;
+    }
+
+    /**
+     * @return next state of a neighborhood, or the default state if it has no rule
+     */
+    public int lookup(int index) {
+        int next = table[index];
+        if (next == MISSING) {
+            misses.increment();
+            missed[index] = true;
+            return defaultState;
+        }
+
+        return next;
+    }
+
+    /**
+     * @return if the all 0 neighborhood stays 0, so areas of 0's can be skipped
+     */
+    public boolean keepsQuiet() {
+        return table[0] == 0;
+    }
+
+    /**
+     * Identity of the compiled table, the same for tables compiled from the same rules however their files are laid
+     * out, for checking a checkpoint is resumed under the rules that made it
+     *
+     * @return neighborhood, amount of states and default state, then an FNV-1a hash of every entry
+     */
+    public String identity() {
+        long hash = 0xCBF29CE484222325L;
+        for (byte next : table) {
+            hash = (hash ^ (next & 0xFF)) * 0x100000001B3L;
+        }
+
+        return "rule table " + neighborhood + ", " + numStates + " states, default " + defaultState
+                + ", " + String.format("%016x", hash);
+    }
+
+    /**
+     * @return amount of lookups that found no rule
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void resetMisses() {
+        misses.reset();
+        Arrays.fill(missed, false);
+    }
+
+    /**
+     * @return every neighborhood looked up without a rule, as strings of each cell's state in the
+     * neighborhood's order, such as "CNESW" for von Neumann
+     */
+    public List<String> getMissedNeighborhoods() {
+        List<String> neighborhoods = new ArrayList<>();
+        for (int i = 0; i < missed.length; i++) {
+            if (!missed[i]) continue;
+
+            //Unpack each state from the index
+            char[] key = new char[neighborhood.size()];
+            for (int digit = key.length - 1, rest = i; digit >= 0; digit--, rest /= numStates) {
+                key[digit] = Character.forDigit(rest % numStates, Character.MAX_RADIX);
+            }
+            neighborhoods.add(new String(key));
+        }
+
+        return neighborhoods;
+    }
+
+    /**
+     * Generates the next generation of a grid into its back buffer, then swaps it in
+     */
+    public void step(StateGrid grid) {
+        checkHalo(grid);
+        grid.refreshHalo();
+        stepRows(grid, 0, grid.numRows);
+        grid.hashChanges(0, grid.numRows, 0, grid.numCols);
+        grid.swap();
+    }
+
+    /**
+     * Generates the next generation of a grid with bands of rows stepped in parallel, then swaps it in.
+     * Gives the same result as {@link #step(StateGrid)}
+     */
+    public void step(StateGrid grid, ParallelStepper stepper) {
+        checkHalo(grid);
+        grid.refreshHalo();
+        stepper.forEachBand(grid.numRows, grid.numCols, (fromRow, toRow) -> stepRows(grid, fromRow, toRow));
+        grid.hashChanges(0, grid.numRows, 0, grid.numCols);
+        grid.swap();
+    }
+
+    /**
+     * Generates the next generation of a grid, only stepping tiles near cells that changed last generation,
+     * then swaps it in. Gives the same result as {@link #step(StateGrid)}
+     *
+     * @param tiles   tiles tracked for this grid
+     * @param stepper stepper to spread rows of tiles over, or null to step on this thread
+     */
+    public void step(StateGrid grid, ActiveTiles tiles, ParallelStepper stepper) {
+        checkHalo(grid);
+        grid.refreshHalo();
+        tiles.step(grid.numRows, grid.numCols,
+                (fromRow, toRow, fromCol, toCol) -> stepRegion(grid, fromRow, toRow, fromCol, toCol), stepper);
+        //Tiles that didn't change hold the same states in both buffers
+        if (grid.isHashing()) tiles.forEachChanged(grid.numRows, grid.numCols, grid::hashChanges);
+        grid.swap();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the grid's halo is too thin to hold every neighbor of its edge cells
+     */
+    private void checkHalo(StateGrid grid) {
+        if (grid.halo < neighborhood.radius) {
+            throw new IllegalArgumentException("Neighborhood " + neighborhood + " needs a grid halo of "
+                    + neighborhood.radius + " cells.");
+        }
+    }
+
+    /**
+     * Generates the rows in [fromRow, toRow) of the next generation into the grid's back buffer,
+     * the grid's halo must already be refreshed
+     */
+    public void stepRows(StateGrid grid, int fromRow, int toRow) {
+        stepRegion(grid, fromRow, toRow, 0, grid.numCols);
+    }
+
+    /**
+     * Generates the cells in rows [fromRow, toRow) and cols [fromCol, toCol) of the next generation
+     * into the grid's back buffer, the grid's halo must already be refreshed.
+     * If the all 0 neighborhood stays 0, blocks of 8 cells whose neighbors are all 0 are checked as a few longs
+     * and written as a single zero long, instead of being looked up one by one.
+     * Any other cell is looked up on its own, which gives the same result
+     *
+     * @return if any of the cells changed state
+     */
+    //The gather switch falls through on purpose, unrolling the neighborhoods of up to 9 cells
+    @SuppressWarnings("fallthrough")
+    public boolean stepRegion(StateGrid grid, int fromRow, int toRow, int fromCol, int toCol) {
+        final int stride = grid.stride;
+        final int states = numStates;
+        final CompiledOffsets compiled = compiledOffsets(stride);
+        final int[] offsets = compiled.cells;
+        final int[] blockOffsets = compiled.blocks;
+        final boolean nearest = neighborhood.radius == 1;
+        final boolean diagonals = compiled.diagonals;
+        final int size = offsets.length;
+        //Neighbor offsets held in locals
+        final int s1 = compiled.slots[0], s2 = compiled.slots[1], s3 = compiled.slots[2], s4 = compiled.slots[3];
+        final int s5 = compiled.slots[4], s6 = compiled.slots[5], s7 = compiled.slots[6], s8 = compiled.slots[7];
+        final boolean skipQuiet = keepsQuiet();
+        byte[] past = grid.getCells();
+        byte[] next = grid.getNextCells();
+        int changes = 0;
+
+        for (int row = fromRow; row < toRow; row++) {
+            //Neighbors past the edges are read from the halo
+            int from = grid.index(row, fromCol);
+            int to = from + (toCol - fromCol);
+
+            int i = from;
+            while (i < to) {
+                //Cells are taken 8 at a time, and looked up one by one unless they're all quiet
+                int end = Math.min(i + 8, to);
+                if (skipQuiet && end - i == 8 && (nearest
+                        ? isQuiet(past, i, stride, diagonals) : isQuiet(past, i, blockOffsets))) {
+                    EIGHT_CELLS.set(next, i, 0L);
+                    i = end;
+                    continue;
+                }
+
+                for (; i < end; i++) {
+                    //Gather the neighborhood, the center first. Each case falls through to the next, so a
+                    //neighborhood of n cells gathers its neighbors from the last n - 1 slots
+                    int center = past[i];
+                    int index = center;
+                    switch (size) {
+                        case 9:
+                            index = index * states + past[i + s1];
+                        case 8:
+                            index = index * states + past[i + s2];
+                        case 7:
+                            index = index * states + past[i + s3];
+                        case 6:
+                            index = index * states + past[i + s4];
+                        case 5:
+                            index = index * states + past[i + s5];
+                        case 4:
+                            index = index * states + past[i + s6];
+                        case 3:
+                            index = index * states + past[i + s7];
+                        case 2:
+                            index = index * states + past[i + s8];
+                        case 1:
+                            break;
+                        default:
+                            for (int k = 1; k < size; k++) {
+                                index = index * states + past[i + offsets[k]];
+                            }
+                    }
+
+                    int state = table[index];
+                    if (state == MISSING) state = lookup(index);
+                    next[i] = (byte) state;
+                    changes |= state ^ center;
+                }
+            }
+        }
+
+        return changes != 0;
+    }
+
+    /**
+     * @return offsets of the neighborhood compiled against a stride, reused while grids of that stride are stepped
+     */
+    private CompiledOffsets compiledOffsets(int stride) {
+        CompiledOffsets compiled = this.compiled;
+        if (compiled == null || compiled.stride != stride) {
+            compiled = new CompiledOffsets(neighborhood, stride);
+            this.compiled = compiled;
+        }
+
+        return compiled;
+    }
+
+    /**
+     * @param diagonals if the corners of the block's ring are neighbors too
+     * @return if the 8 cells from i, the cells above and below them, and the cells on either side are all 0
+     */
+    private static boolean isQuiet(byte[] past, int i, int stride, boolean diagonals) {
+        return (long) EIGHT_CELLS.get(past, i) == 0
+                && (long) EIGHT_CELLS.get(past, i - stride) == 0
+                && (long) EIGHT_CELLS.get(past, i + stride) == 0
+                && past[i - 1] == 0 && past[i + 8] == 0
+                && (!diagonals || (past[i - stride - 1] == 0 && past[i - stride + 8] == 0
+                && past[i + stride - 1] == 0 && past[i + stride + 8] == 0));
+    }
+
+    /**
+     * @param blockOffsets runs of 8 cells covering every neighbor of the block, from {@link Neighborhood#blockOffsets}
+     * @return if the 8 cells from i and all their neighbors are 0
+     */
+    private static boolean isQuiet(byte[] past, int i, int[] blockOffsets) {
+        for (int offset : blockOffsets) {
+            if ((long) EIGHT_CELLS.get(past, i + offset) != 0) return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,283 @@
+package Engines;
+
+import CAClassPackage.GridHistory;
+import CAClassPackage.StateGrid;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Steps a simulation on its own thread, so a slow generation doesn't freeze the GUI and a fast one
+ * isn't capped at the display rate.
+ * Snapshots of the grid are handed to the GUI through a single latest-value slot. Publishing replaces
+ * whatever snapshot the GUI hasn't taken yet, so the GUI always draws the newest generation and skips the rest.
+ * With a {@link Checkpointer} set, a checkpoint is also saved every so often, and once more when the loop is closed.
+ * With a {@link GridHistory} set, every generation is recorded into it, so the GUI can seek back through the run.
+ * That costs a snapshot of the whole grid each generation, unpacked and compared with the last one, however little of
+ * the grid the engine stepped, so histories are only kept when asked for
+ */
+public class SimulationLoop implements AutoCloseable {
+    //System property setting the default generations per second target
+    public static final String GENERATIONS_PER_SECOND_PROPERTY = "ca.generationsPerSecond";
+    //System property setting the default frames per second target
+    public static final String FRAMES_PER_SECOND_PROPERTY = "ca.framesPerSecond";
+    public static final double DEFAULT_FRAMES_PER_SECOND = 60;
+    //Most a late simulation may catch up by, in nanoseconds, before it gives up on the lost generations
+    private static final long MAX_LAG = 250_000_000;
+    //Time between samples of the population and rule table misses, in nanoseconds, as they can take a pass over the grid
+    private static final long SAMPLE_INTERVAL = 250_000_000;
+
+    /**
+     * A simulation owned by the loop's thread once the loop is started
+     */
+    public interface Simulation {
+        /**
+         * Advances the simulation by one generation
+         */
+        void step();
+
+        /**
+         * @return new grid holding the current generation, which is never changed after it's returned
+         */
+        StateGrid snapshot();
+
+        /**
+         * @return about how many cells the last step updated, 0 if unknown
+         */
+        default long cellsStepped() {
+            return 0;
+        }
+
+        /**
+         * @return amount of cells in a non-zero state, -1 if unknown
+         */
+        default long population() {
+            return -1;
+        }
+
+        /**
+         * @return neighborhoods missing from the simulation's rule table so far, 0 if it has no rule table
+         */
+        default long ruleTableMisses() {
+            return 0;
+        }
+    }
+
+    private final Simulation simulation;
+    private final SimulationMetrics metrics = new SimulationMetrics();
+    private final AtomicReference<StateGrid> latest = new AtomicReference<>();
+    private final Thread thread;
+    private volatile Checkpointer checkpointer;
+    private volatile GridHistory history;
+    private volatile double generationsPerSecond;
+    private volatile double framesPerSecond;
+    private volatile boolean running;
+    private volatile long generations;
+
+    /**
+     * @param generationsPerSecond target amount of generations stepped each second, infinite for no limit
+     * @param framesPerSecond      target amount of frames drawn each second
+     */
+    public SimulationLoop(Simulation simulation, double generationsPerSecond, double framesPerSecond) {
+        this.simulation = simulation;
+        setGenerationsPerSecond(generationsPerSecond);
+        setFramesPerSecond(framesPerSecond);
+
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        latest.set(simulation.snapshot());
+    }
+
+    /**
+     * Creates a loop with the targets set by {@link #GENERATIONS_PER_SECOND_PROPERTY} and {@link #FRAMES_PER_SECOND_PROPERTY}
+     *
+     * @param generationsPerSecond generations per second target when the property isn't set
+     */
+    public static SimulationLoop fromProperties(Simulation simulation, double generationsPerSecond) {
+        return new SimulationLoop(simulation,
+                doubleProperty(GENERATIONS_PER_SECOND_PROPERTY, generationsPerSecond),
+                doubleProperty(FRAMES_PER_SECOND_PROPERTY, DEFAULT_FRAMES_PER_SECOND));
+    }
+
+    private static double doubleProperty(String name, double fallback) {
+        String value = System.getProperty(name);
+        if (value == null) return fallback;
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    public double getGenerationsPerSecond() {
+        return generationsPerSecond;
+    }
+
+    public void setGenerationsPerSecond(double generationsPerSecond) {
+        if (!(generationsPerSecond > 0)) {
+            throw new IllegalArgumentException("Generations per second must be positive.");
+        }
+
+        this.generationsPerSecond = generationsPerSecond;
+    }
+
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    public void setFramesPerSecond(double framesPerSecond) {
+        if (!(framesPerSecond > 0)) {
+            throw new IllegalArgumentException("Frames per second must be positive.");
+        }
+
+        this.framesPerSecond = framesPerSecond;
+    }
+
+    /**
+     * @return amount of generations stepped since the loop started
+     */
+    public long getGenerations() {
+        return generations;
+    }
+
+    /**
+     * @return metrics of the loop's steps, frames drawn should be recorded into them by whatever draws them
+     */
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param checkpointer saves checkpoints of the simulation, or null for none, closed along with the loop
+     */
+    public void setCheckpointer(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    /**
+     * Records the current generation into a history, and every generation stepped after it.
+     * Should be set before the loop is started
+     *
+     * @param history history the grid's generations are recorded into, or null for none, closed along with the loop
+     */
+    public void setHistory(GridHistory history) {
+        if (history != null) history.record(simulation.snapshot());
+        this.history = history;
+    }
+
+    /**
+     * @return history the generations are recorded into, or null if none
+     */
+    public GridHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Takes the newest snapshot, safe to call from any thread
+     *
+     * @return newest snapshot, or null if none was published since the last call
+     */
+    public StateGrid pollSnapshot() {
+        return latest.getAndSet(null);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the loop after the generation being stepped, and removes its metrics from JMX.
+     * With a checkpointer set, waits for the last checkpoint to be written, so closing doesn't lose the run.
+     * A loop that was never started writes its last checkpoint and closes its checkpointer and history here
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        metrics.unregister();
+
+        if (thread.getState() == Thread.State.NEW) {
+            finish();
+        } else if (checkpointer != null && thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        long nextGeneration = System.nanoTime();
+        long lastPublish = nextGeneration;
+        long lastSample = nextGeneration - SAMPLE_INTERVAL;
+
+        while (running) {
+            long allocatedBefore = SimulationMetrics.allocatedBytes();
+            long start = System.nanoTime();
+            simulation.step();
+            long now = System.nanoTime();
+            metrics.recordStep(now - start, simulation.cellsStepped(),
+                    (allocatedBefore < 0) ? -1 : SimulationMetrics.allocatedBytes() - allocatedBefore);
+            ++generations;
+
+            //Every generation is snapshotted while keeping a history, and the snapshot shared with the rest
+            GridHistory past = history;
+            StateGrid recorded = null;
+            if (past != null) {
+                recorded = simulation.snapshot();
+                past.record(recorded);
+            }
+
+            Checkpointer checkpoints = checkpointer;
+            if (checkpoints != null && checkpoints.due()) {
+                checkpoints.submit((recorded != null) ? recorded : simulation.snapshot());
+            }
+
+            if (now - lastSample >= SAMPLE_INTERVAL) {
+                metrics.setPopulation(simulation.population());
+                metrics.setRuleTableMisses(simulation.ruleTableMisses());
+                lastSample = now;
+            }
+
+            //Publish once the last snapshot was taken, or once a frame, a snapshot the GUI hasn't taken yet is just replaced
+            if (latest.get() == null || now - lastPublish >= (long) (1e9 / framesPerSecond)) {
+                latest.set((recorded != null) ? recorded : simulation.snapshot());
+                lastPublish = now;
+            }
+
+            //Wait for the next generation, unless the target is unlimited or we're behind it
+            if (Double.isInfinite(generationsPerSecond)) continue;
+            nextGeneration += (long) (1e9 / generationsPerSecond);
+            if (now - nextGeneration > MAX_LAG) {
+                nextGeneration = now;
+            }
+            while (running && (now = System.nanoTime()) < nextGeneration) {
+                LockSupport.parkNanos(nextGeneration - now);
+            }
+        }
+
+        finish();
+    }
+
+    /**
+     * Writes the last checkpoint, then closes the checkpointer and history
+     */
+    private void finish() {
+        Checkpointer checkpoints = checkpointer;
+        if (checkpoints != null) {
+            checkpoints.submit(simulation.snapshot());
+            checkpoints.close();
+        }
+        if (history != null) {
+            try {
+                history.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
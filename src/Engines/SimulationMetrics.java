@@ -0,0 +1,299 @@
+package Engines;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and histograms of a running simulation: how long steps and frames take, how many generations and
+ * cells are stepped each second, the population, rule table misses and bytes allocated per step.
+ * Steps are recorded by the simulation's thread and frames by the GUI thread, and any thread can read them,
+ * so they can be published over JMX with {@link #register(String)} and watched with standard JVM tools
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+    //Length of the window rates are averaged over, in nanoseconds
+    private static final long RATE_WINDOW = 1_000_000_000;
+
+    /**
+     * Histogram of times with one bucket per power of 2 nanoseconds. Recorded by one thread, read by any
+     */
+    private static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private volatile long count;
+        private volatile long totalNanos;
+        private volatile long maxNanos;
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 1);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos));
+            //Only one thread records, so plain updates of the volatiles are enough
+            count = count + 1;
+            totalNanos = totalNanos + nanos;
+            if (nanos > maxNanos) maxNanos = nanos;
+        }
+
+        double meanMillis() {
+            long n = count;
+            return (n == 0) ? 0 : totalNanos / 1e6 / n;
+        }
+
+        /**
+         * @return upper bound of the bucket holding a percentile of the times, in milliseconds
+         */
+        double percentileMillis(double percentile) {
+            long[] counts = toArray();
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min((double) (1L << Math.min(i + 1, 62)), maxNanos) / 1e6;
+            }
+
+            return maxNanos / 1e6;
+        }
+
+        long[] toArray() {
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+
+            return counts;
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+        }
+    }
+
+    private final Histogram stepTimes = new Histogram();
+    private final Histogram renderTimes = new Histogram();
+    private volatile long generations;
+    private volatile long population = -1;
+    private volatile long ruleTableMisses;
+
+    //Rates over the last finished window
+    private volatile double generationsPerSecond;
+    private volatile double cellsPerSecond;
+    private volatile double allocatedBytesPerStep;
+    private volatile double framesPerSecond;
+
+    //Window being filled by the simulation's thread
+    private long stepWindowStart = System.nanoTime();
+    private long windowSteps;
+    private long windowCells;
+    private long windowBytes;
+    //Window being filled by the GUI thread
+    private long frameWindowStart = System.nanoTime();
+    private long windowFrames;
+
+    private ObjectName registeredName;
+
+    /**
+     * Records one generation, called by the simulation's thread
+     *
+     * @param nanos          time the step took
+     * @param cells          amount of cells stepped
+     * @param allocatedBytes bytes allocated by the step, or a negative number if unknown
+     */
+    public void recordStep(long nanos, long cells, long allocatedBytes) {
+        stepTimes.record(nanos);
+        generations = generations + 1;
+
+        ++windowSteps;
+        windowCells += cells;
+        windowBytes += Math.max(allocatedBytes, 0);
+        long now = System.nanoTime();
+        long elapsed = now - stepWindowStart;
+        if (elapsed >= RATE_WINDOW) {
+            generationsPerSecond = windowSteps * 1e9 / elapsed;
+            cellsPerSecond = windowCells * 1e9 / elapsed;
+            allocatedBytesPerStep = (allocatedBytes < 0) ? Double.NaN : (double) windowBytes / windowSteps;
+            stepWindowStart = now;
+            windowSteps = 0;
+            windowCells = 0;
+            windowBytes = 0;
+        }
+    }
+
+    /**
+     * Records one frame drawn, called by the GUI thread
+     *
+     * @param nanos time drawing the frame took
+     */
+    public void recordRender(long nanos) {
+        renderTimes.record(nanos);
+
+        ++windowFrames;
+        long now = System.nanoTime();
+        long elapsed = now - frameWindowStart;
+        if (elapsed >= RATE_WINDOW) {
+            framesPerSecond = windowFrames * 1e9 / elapsed;
+            frameWindowStart = now;
+            windowFrames = 0;
+        }
+    }
+
+    public void setPopulation(long population) {
+        this.population = population;
+    }
+
+    public void setRuleTableMisses(long ruleTableMisses) {
+        this.ruleTableMisses = ruleTableMisses;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1 if the JVM can't tell
+     */
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+
+    /**
+     * Publishes these metrics on the platform MBean server, under CellularAutomata:type=Simulation,name=name.
+     * A name already taken gets a number added to it
+     */
+    public synchronized void register(String name) {
+        unregister();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 1; registeredName == null; i++) {
+                ObjectName objectName = new ObjectName("CellularAutomata:type=Simulation,name="
+                        + ObjectName.quote((i == 1) ? name : name + " " + i));
+                if (!server.isRegistered(objectName)) {
+                    server.registerMBean(this, objectName);
+                    registeredName = objectName;
+                }
+            }
+        } catch (JMException e) {
+            //Metrics still work without JMX
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if they were registered
+     */
+    public synchronized void unregister() {
+        if (registeredName == null) return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        registeredName = null;
+    }
+
+    /**
+     * @return short summary for drawing over a simulation
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format(Locale.ROOT, "generation %d%n", generations));
+        summary.append(String.format(Locale.ROOT, "%.1f gens/s, %.3g cells/s%n", generationsPerSecond, cellsPerSecond));
+        summary.append(String.format(Locale.ROOT, "step %.3f ms (p99 %.3f ms)%n", getMeanStepMillis(), getStepMillisP99()));
+        summary.append(String.format(Locale.ROOT, "render %.3f ms, %.1f fps%n", getMeanRenderMillis(), framesPerSecond));
+        summary.append(String.format(Locale.ROOT, "allocated %.0f B/step", allocatedBytesPerStep));
+        if (population >= 0) summary.append(String.format(Locale.ROOT, "%npopulation %d", population));
+        if (ruleTableMisses > 0) summary.append(String.format(Locale.ROOT, "%nrule table misses %d", ruleTableMisses));
+
+        return summary.toString();
+    }
+
+    @Override
+    public long getGenerations() {
+        return generations;
+    }
+
+    @Override
+    public double getGenerationsPerSecond() {
+        return generationsPerSecond;
+    }
+
+    @Override
+    public double getCellsPerSecond() {
+        return cellsPerSecond;
+    }
+
+    @Override
+    public double getMeanStepMillis() {
+        return stepTimes.meanMillis();
+    }
+
+    @Override
+    public double getStepMillisP50() {
+        return stepTimes.percentileMillis(50);
+    }
+
+    @Override
+    public double getStepMillisP99() {
+        return stepTimes.percentileMillis(99);
+    }
+
+    @Override
+    public double getMaxStepMillis() {
+        return stepTimes.maxNanos / 1e6;
+    }
+
+    @Override
+    public long[] getStepTimeHistogram() {
+        return stepTimes.toArray();
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public double getMeanRenderMillis() {
+        return renderTimes.meanMillis();
+    }
+
+    @Override
+    public double getRenderMillisP99() {
+        return renderTimes.percentileMillis(99);
+    }
+
+    @Override
+    public long getPopulation() {
+        return population;
+    }
+
+    @Override
+    public long getRuleTableMisses() {
+        return ruleTableMisses;
+    }
+
+    @Override
+    public double getAllocatedBytesPerStep() {
+        return allocatedBytesPerStep;
+    }
+
+    @Override
+    public void reset() {
+        stepTimes.reset();
+        renderTimes.reset();
+    }
+}
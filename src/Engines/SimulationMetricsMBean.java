@@ -0,0 +1,43 @@
+package Engines;
+
+/**
+ * Attributes a {@link SimulationMetrics} publishes over JMX, viewable in JConsole or VisualVM
+ * under CellularAutomata/Simulation. Times are in milliseconds, and rates are averaged over the last second
+ */
+public interface SimulationMetricsMBean {
+    long getGenerations();
+
+    double getGenerationsPerSecond();
+
+    double getCellsPerSecond();
+
+    double getMeanStepMillis();
+
+    double getStepMillisP50();
+
+    double getStepMillisP99();
+
+    double getMaxStepMillis();
+
+    /**
+     * @return amount of steps that took [2^i, 2^(i + 1)) nanoseconds, for each i
+     */
+    long[] getStepTimeHistogram();
+
+    double getFramesPerSecond();
+
+    double getMeanRenderMillis();
+
+    double getRenderMillisP99();
+
+    long getPopulation();
+
+    long getRuleTableMisses();
+
+    double getAllocatedBytesPerStep();
+
+    /**
+     * Clears the times and histograms, but not the counts
+     */
+    void reset();
+}
@@ -0,0 +1,507 @@
+import CAClassPackage.EdgeMode;
+import CAClassPackage.GridFile;
+import CAClassPackage.GridParser;
+import CAClassPackage.IllegalInitialStateException;
+import CAClassPackage.RleReader;
+import CAClassPackage.StateGrid;
+import Engines.Checkpointer;
+import Engines.CycleDetector;
+import Engines.ElementarySweep;
+import Engines.LifeLikeRule;
+import Engines.LifeRule;
+import Engines.Neighborhood;
+import Engines.PackedElementaryRow;
+import Engines.PackedLifeGrid;
+import Engines.PackedStateGrid;
+import Engines.ParallelStepper;
+import Engines.RuleTable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Scanner;
+
+/**
+ * Launcher for running Cellular Automatas without a GUI.
+ * Loads the same input files as the GUI, runs a number of generations, then writes the final state,
+ * population and timing. Never touches a JavaFX class, so it runs on machines without a display.
+ * Grid files can be text or binary {@link GridFile}s, so running 0 generations converts between the two.
+ * Long 2D runs can save checkpoints as they go, and be resumed by running the same command again with -pr
+ */
+public class HeadlessRunner {
+    private static final String USAGE = String.join("\n",
+            "Usage: HeadlessRunner <automata> <input files...> [options]",
+            "  elementary <file>                          rule bits, then the initial row",
+            "  life <file>                                Game Of Life file",
+            "  langton <rule table> <initial config>      Langtons Loop, 8 states",
+            "  generic <rule table> <states> <grid file>  2D rule table, grid of digits",
+            "  sweep [rules]                              every Elementary rule, or a list such as 30,90,100-110,",
+            "                                             against random rows, written as CSV",
+            "Options:",
+            "  -n <generations>   generations to run, default 100",
+            "  -o <file>          write to a file instead of stdout, a " + GridFile.EXTENSION + " file is written",
+            "                     as a binary grid with the stats still going to stdout",
+            "  -e <edge mode>     toroidal, fixed or reflecting, default toroidal",
+            "  -r <rule>          life rule in B/S notation, default the RLE file's rule or B3/S23",
+            "  -k <neighborhood>  generic neighborhood: vonneumann, moore, either with :radius, hexagonal,",
+            "                     or row,col offsets such as \"-1,0 0,1 1,0 0,-1\", default vonneumann",
+            "  -c                 stop early once the automata dies out, stops changing or repeats",
+            "  -p <directory>     save checkpoints of life, langton and generic runs to a directory",
+            "  -pn <generations>  generations between checkpoints, 0 for none, default " + Checkpointer.DEFAULT_GENERATIONS,
+            "  -pt <seconds>      seconds between checkpoints, 0 for none, default " + Checkpointer.DEFAULT_SECONDS,
+            "  -pr                resume from the latest checkpoint in the -p directory, still running until",
+            "                     the input's generation plus -n",
+            "  -w <width>         sweep row width, default 1000",
+            "  -t <trials>        sweep random rows per rule, default 10",
+            "  -s <seed>          sweep random seed, default 42");
+
+    //Options
+    private static long generations = 100;
+    private static File output = null;
+    private static EdgeMode edgeMode = EdgeMode.TOROIDAL;
+    private static String lifeRule = null;
+    private static String neighborhood = null;
+    private static boolean detectCycles = false;
+    private static File checkpointDirectory = null;
+    private static long checkpointGenerations = Checkpointer.DEFAULT_GENERATIONS;
+    private static long checkpointSeconds = Checkpointer.DEFAULT_SECONDS;
+    private static boolean resume = false;
+    private static int sweepWidth = 1000;
+    private static int sweepTrials = 10;
+    private static long sweepSeed = 42;
+
+    public static void main(String[] args) {
+        try {
+            String[] inputs = parseOptions(args);
+            if (inputs.length == 0) throw new IllegalArgumentException("Must choose an automata.");
+
+            try (PrintWriter out = new PrintWriter(openOutput())) {
+                switch (inputs[0]) {
+                    case "elementary": {
+                        requireInputs(inputs, 2);
+                        if (binaryOutput()) throw new IllegalArgumentException("Binary grid files only hold 2D grids.");
+                        runElementary(new File(inputs[1]), out);
+                        break;
+                    }
+                    case "life": {
+                        requireInputs(inputs, 2);
+                        runLife(new File(inputs[1]), out);
+                        break;
+                    }
+                    case "langton": {
+                        requireInputs(inputs, 3);
+                        runRuleTable(new File(inputs[1]), Neighborhood.vonNeumann(), 8,
+                                GridParser.readStateFile(new File(inputs[2]), 8), out);
+                        break;
+                    }
+                    case "generic": {
+                        requireInputs(inputs, 4);
+                        int numStates = Integer.parseInt(inputs[2]);
+                        Neighborhood cells = (neighborhood == null)
+                                ? Neighborhood.vonNeumann() : Neighborhood.parse(neighborhood);
+                        runRuleTable(new File(inputs[1]), cells, numStates,
+                                readGenericGrid(new File(inputs[3]), numStates), out);
+                        break;
+                    }
+                    case "sweep": {
+                        if (inputs.length > 2) throw new IllegalArgumentException("Wrong amount of inputs for sweep.");
+                        if (binaryOutput()) throw new IllegalArgumentException("Sweeps are written as CSV.");
+                        runSweep((inputs.length == 2) ? parseRuleList(inputs[1]) : allRules(), out);
+                        break;
+                    }
+                    default: {
+                        throw new IllegalArgumentException("Unknown automata: " + inputs[0]);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IOException | IllegalInitialStateException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the options out of the arguments
+     *
+     * @return the arguments that aren't options
+     */
+    private static String[] parseOptions(String[] args) {
+        String[] inputs = new String[args.length];
+        int numInputs = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-n": {
+                    generations = Long.parseLong(optionValue(args, ++i));
+                    if (generations < 0) throw new IllegalArgumentException("Generations can't be negative.");
+                    break;
+                }
+                case "-o": {
+                    output = new File(optionValue(args, ++i));
+                    break;
+                }
+                case "-e": {
+                    edgeMode = EdgeMode.valueOf(optionValue(args, ++i).toUpperCase(Locale.ROOT));
+                    break;
+                }
+                case "-r": {
+                    lifeRule = optionValue(args, ++i);
+                    break;
+                }
+                case "-k": {
+                    neighborhood = optionValue(args, ++i);
+                    break;
+                }
+                case "-c": {
+                    detectCycles = true;
+                    break;
+                }
+                case "-p": {
+                    checkpointDirectory = new File(optionValue(args, ++i));
+                    break;
+                }
+                case "-pn": {
+                    checkpointGenerations = Long.parseLong(optionValue(args, ++i));
+                    if (checkpointGenerations < 0) throw new IllegalArgumentException("Generations can't be negative.");
+                    break;
+                }
+                case "-pt": {
+                    checkpointSeconds = Long.parseLong(optionValue(args, ++i));
+                    if (checkpointSeconds < 0) throw new IllegalArgumentException("Seconds can't be negative.");
+                    break;
+                }
+                case "-pr": {
+                    resume = true;
+                    break;
+                }
+                case "-w": {
+                    sweepWidth = Integer.parseInt(optionValue(args, ++i));
+                    break;
+                }
+                case "-t": {
+                    sweepTrials = Integer.parseInt(optionValue(args, ++i));
+                    break;
+                }
+                case "-s": {
+                    sweepSeed = Long.parseLong(optionValue(args, ++i));
+                    break;
+                }
+                default: {
+                    inputs[numInputs++] = args[i];
+                }
+            }
+        }
+
+        if (resume && checkpointDirectory == null) {
+            throw new IllegalArgumentException("-pr needs the -p directory to resume from.");
+        }
+
+        return Arrays.copyOf(inputs, numInputs);
+    }
+
+    private static String optionValue(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + args[i - 1] + ".");
+        return args[i];
+    }
+
+    private static void requireInputs(String[] inputs, int count) {
+        if (inputs.length != count) {
+            throw new IllegalArgumentException("Wrong amount of input files for " + inputs[0] + ".");
+        }
+    }
+
+    /**
+     * @return if the final grid is written as a binary grid file
+     */
+    private static boolean binaryOutput() {
+        return output != null && output.getName().endsWith(GridFile.EXTENSION);
+    }
+
+    private static Writer openOutput() throws FileNotFoundException {
+        return (output == null || binaryOutput())
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8);
+    }
+
+    private static void runElementary(File file, PrintWriter out)
+            throws FileNotFoundException, IllegalInitialStateException {
+        PackedElementaryRow row;
+        try (Scanner fin = new Scanner(new FileInputStream(file))) {
+            //A rule line, then the starting row
+            String[] lines = new String[2];
+            for (int i = 0; i < lines.length; i++) {
+                if (!fin.hasNextLine()) {
+                    throw new IllegalInitialStateException(file.getName() + " must hold a rule line and a starting row.");
+                }
+                lines[i] = fin.nextLine();
+            }
+
+            int ruleNumber = GridParser.parseRuleBits(lines[0]);
+            row = new PackedElementaryRow(ruleNumber, GridParser.parseElementaryRow(lines[1]));
+        }
+
+        CycleDetector cycles = newCycleDetector();
+        row.setHashing(cycles != null);
+
+        long start = System.nanoTime();
+        long run = 0;
+        while (!settled(cycles, row.getGeneration(), row.getHash()) && run < generations) {
+            row.step();
+            ++run;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        writeStats(out, run, row.population(), row.width, elapsed, cycles);
+        //Same format as the input file
+        StringBuilder rule = new StringBuilder();
+        for (int bit = 7; bit >= 0; bit--) {
+            rule.append((row.ruleNumber >>> bit) & 1);
+        }
+        out.println(rule);
+        StringBuilder states = new StringBuilder();
+        for (byte state : row.toStates()) {
+            states.append(state);
+        }
+        out.println(states);
+    }
+
+    private static void runLife(File file, PrintWriter out) throws IOException, IllegalInitialStateException {
+        StateGrid grid = GridParser.readLifeFile(file);
+        grid.setEdgeMode(edgeMode);
+        LifeLikeRule rule = (lifeRule != null) ? LifeLikeRule.parse(lifeRule) : null;
+        if (rule == null && file.getName().endsWith(RleReader.EXTENSION)) rule = RleReader.readRule(file);
+        if (rule == null) rule = LifeLikeRule.CONWAY;
+
+        CycleDetector cycles = newCycleDetector();
+        Checkpointer checkpoints = newCheckpointer("life " + rule, 2);
+        long steps = generations;
+        if (checkpoints != null) {
+            long target = grid.getGeneration() + generations;
+            grid = checkpoints.resume(grid);
+            steps = Math.max(0, target - grid.getGeneration());
+        }
+
+        //The bit-packed engine only wraps, other edge modes step the grid itself
+        long start = System.nanoTime();
+        long run = 0;
+        if (edgeMode == EdgeMode.TOROIDAL) {
+            PackedLifeGrid life = PackedLifeGrid.fromStateGrid(grid, rule);
+            life.setHashing(cycles != null);
+            while (!settled(cycles, life.getGeneration(), life.getHash()) && run < steps) {
+                life.step(ParallelStepper.getDefault());
+                ++run;
+                if (checkpoints != null && checkpoints.due()) {
+                    StateGrid snapshot = new StateGrid(grid.numRows, grid.numCols);
+                    life.copyInto(snapshot);
+                    checkpoints.submit(snapshot);
+                }
+            }
+            life.copyInto(grid);
+        } else {
+            grid.setHashing(cycles != null);
+            while (!settled(cycles, grid.getGeneration(), grid.getHash()) && run < steps) {
+                LifeRule.step(grid, rule);
+                ++run;
+                if (checkpoints != null && checkpoints.due()) checkpoints.submit(grid.copy());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checkpoints != null) checkpoints.close();
+
+        writeStats(out, run, grid.population(), (long) grid.numRows * grid.numCols, elapsed, cycles);
+        writeGrid(out, grid, 2);
+    }
+
+    private static void runRuleTable(File ruleTableFile, Neighborhood cells, int numStates, StateGrid grid,
+                                     PrintWriter out) throws IOException, IllegalInitialStateException {
+        RuleTable ruleTable = RuleTable.compile(ruleTableFile, cells, numStates, 0);
+        grid.setEdgeMode(edgeMode);
+        CycleDetector cycles = newCycleDetector();
+        Checkpointer checkpoints = newCheckpointer(ruleTable.identity(), numStates);
+        long steps = generations;
+        if (checkpoints != null) {
+            long target = grid.getGeneration() + generations;
+            grid = checkpoints.resume(grid);
+            steps = Math.max(0, target - grid.getGeneration());
+        }
+
+        //Grids of up to 16 states are stepped packed, which moves less memory per generation
+        long start = System.nanoTime();
+        long run = 0;
+        if (PackedStateGrid.bitsPerCell(numStates) != 0) {
+            PackedStateGrid packed = PackedStateGrid.fromStateGrid(grid, numStates);
+            packed.setHashing(cycles != null);
+            while (!settled(cycles, packed.getGeneration(), packed.getHash()) && run < steps) {
+                packed.step(ruleTable, ParallelStepper.getDefault());
+                ++run;
+                if (checkpoints != null && checkpoints.due()) {
+                    StateGrid snapshot = new StateGrid(grid.numRows, grid.numCols);
+                    packed.copyInto(snapshot);
+                    checkpoints.submit(snapshot);
+                }
+            }
+            packed.copyInto(grid);
+        } else {
+            //Wider neighborhoods read further past the edges
+            if (cells.radius > grid.halo) grid = grid.withHalo(cells.radius);
+            grid.setHashing(cycles != null);
+            while (!settled(cycles, grid.getGeneration(), grid.getHash()) && run < steps) {
+                ruleTable.step(grid, ParallelStepper.getDefault());
+                ++run;
+                if (checkpoints != null && checkpoints.due()) checkpoints.submit(grid.copy());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checkpoints != null) checkpoints.close();
+
+        writeStats(out, run, grid.population(), (long) grid.numRows * grid.numCols, elapsed, cycles);
+        if (ruleTable.getMisses() > 0) {
+            out.println("rule table misses: " + ruleTable.getMisses() + " " + ruleTable.getMissedNeighborhoods());
+        }
+        writeGrid(out, grid, numStates);
+    }
+
+    /**
+     * Runs every rule against the same random rows, writing one line of CSV per rule
+     */
+    private static void runSweep(int[] ruleNumbers, PrintWriter out) throws InterruptedException {
+        ElementarySweep sweep = new ElementarySweep(sweepWidth, generations, sweepTrials, sweepSeed);
+
+        long start = System.nanoTime();
+        List<ElementarySweep.Result> results = sweep.run(ruleNumbers, Runtime.getRuntime().availableProcessors());
+        long elapsed = System.nanoTime() - start;
+
+        out.println(ElementarySweep.CSV_HEADER);
+        for (ElementarySweep.Result result : results) {
+            out.println(result.toCsv());
+        }
+        //Kept out of the CSV
+        System.err.printf(Locale.ROOT, "swept %d rules in %.3f s%n", ruleNumbers.length, elapsed / 1e9);
+    }
+
+    private static int[] allRules() {
+        int[] rules = new int[256];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = i;
+        }
+
+        return rules;
+    }
+
+    /**
+     * @param list rule numbers and ranges separated by commas, such as 30,90,100-110
+     */
+    private static int[] parseRuleList(String list) {
+        List<Integer> rules = new ArrayList<>();
+        for (String item : list.split(",")) {
+            String[] range = item.trim().split("-");
+            int from = Integer.parseInt(range[0].trim());
+            int to = (range.length == 2) ? Integer.parseInt(range[1].trim()) : from;
+            if (range.length > 2 || from < 0 || to > 255 || from > to) {
+                throw new IllegalArgumentException("Invalid rules: " + item);
+            }
+
+            for (int rule = from; rule <= to; rule++) {
+                rules.add(rule);
+            }
+        }
+
+        return rules.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Reads a generic grid file, with or without a first line holding the amount of rows and columns
+     */
+    private static StateGrid readGenericGrid(File file, int numStates) throws IOException, IllegalInitialStateException {
+        if (GridFile.isGridFile(file)) return GridFile.read(file, numStates);
+
+        try (Scanner fin = new Scanner(new FileInputStream(file))) {
+            StringBuilder grid = new StringBuilder();
+            while (fin.hasNextLine()) {
+                String line = fin.nextLine();
+                if (line.contains(" ")) continue;
+
+                grid.append(line).append("\n");
+            }
+
+            return GridParser.parseStateGrid(grid.toString(), numStates);
+        }
+    }
+
+    /**
+     * @return detector for the run, or null if cycles aren't being detected
+     */
+    private static CycleDetector newCycleDetector() {
+        return detectCycles ? new CycleDetector() : null;
+    }
+
+    /**
+     * @param rule      identity of the rule the run is stepped with
+     * @param numStates amount of states cells can be in
+     * @return checkpointer for the run, or null if checkpoints aren't being saved
+     */
+    private static Checkpointer newCheckpointer(String rule, int numStates) {
+        return (checkpointDirectory != null)
+                ? new Checkpointer(checkpointDirectory, rule, numStates, checkpointGenerations, checkpointSeconds, resume)
+                : null;
+    }
+
+    /**
+     * Records a generation's hash, if cycles are being detected
+     *
+     * @return if the run can stop early
+     */
+    private static boolean settled(CycleDetector cycles, long generation, long hash) {
+        return cycles != null && cycles.record(generation, hash);
+    }
+
+    private static void writeStats(PrintWriter out, long run, long population, long cells, long elapsedNanos,
+                                   CycleDetector cycles) {
+        double seconds = elapsedNanos / 1e9;
+        out.println("generations: " + run);
+        out.println("population: " + population);
+        out.printf(Locale.ROOT, "time: %.3f ms (%.1f generations/s, %.3e cells/s)%n", seconds * 1e3,
+                run / seconds, run * (double) cells / seconds);
+        if (cycles != null) {
+            out.println("outcome: " + cycles);
+        }
+    }
+
+    /**
+     * Writes a grid in the same format it's read from, its size then one line of states per row,
+     * or to a binary grid file
+     */
+    private static void writeGrid(PrintWriter out, StateGrid grid, int numStates) throws IOException {
+        if (binaryOutput()) {
+            GridFile.write(output, grid, numStates);
+            out.println("grid written to " + output);
+            return;
+        }
+
+        out.println(grid.numRows + " " + grid.numCols);
+        StringBuilder row = new StringBuilder(grid.numCols);
+        for (int r = 0; r < grid.numRows; r++) {
+            row.setLength(0);
+            for (int c = 0; c < grid.numCols; c++) {
+                row.append(Character.forDigit(grid.get(r, c), Character.MAX_RADIX));
+            }
+            out.println(row);
+        }
+    }
+}
@@ -1,13 +1,22 @@
+import CAClassPackage.EdgeMode;
 import CAClassPackage.GUIMethodPackage;
+import CAClassPackage.IllegalInitialStateException;
+import Engines.LifeLikeRule;
 import Automatas.*;
 
 import javafx.application.Application;
 import javafx.geometry.Insets;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
+import java.io.File;
+
 /**
  * This class is the main launcher for all Cellular Automatas.
  * First lets user choose which cellular automata they want,
@@ -29,15 +38,46 @@ public class Main extends Application {
         Button life = new Button("Game Of Life");
         Button langton = new Button("Langtons Loop");
         Button generic = new Button("Generic CA");
+        //Options
+        CheckBox unbounded = new CheckBox("Unbounded 2D grid");
+        ChoiceBox<EdgeMode> edgeMode = new ChoiceBox<>();
+        edgeMode.getItems().addAll(EdgeMode.values());
+        edgeMode.setValue(EdgeMode.TOROIDAL);
+        Label edgeLabel = new Label("2D grid edges:");
+        TextField historyFile = new TextField();
+        historyFile.setPromptText("Save 1D history to file (optional)");
+        TextField lifeRule = new TextField();
+        lifeRule.setPromptText("Game Of Life rule, such as B36/S23 (optional)");
 
         //Event handlers
-        elementary.setOnMousePressed(event -> Elementary.inputFormatPrompt(primaryStage));
-        life.setOnMousePressed(event -> GameOfLife.inputFormatPrompt(primaryStage));
+        elementary.setOnMousePressed(event -> {
+            Elementary.historyFile = historyFile.getText().isBlank() ? null : new File(historyFile.getText());
+            Elementary.inputFormatPrompt(primaryStage);
+        });
+        life.setOnMousePressed(event -> {
+            try {
+                GameOfLife.rule = lifeRule.getText().isBlank() ? null : LifeLikeRule.parse(lifeRule.getText());
+            } catch (IllegalInitialStateException e) {
+                Alert alert = new Alert(Alert.AlertType.WARNING, e.getMessage());
+                alert.showAndWait();
+                return;
+            }
+            GameOfLife.unbounded = unbounded.isSelected();
+            GameOfLife.edgeMode = edgeMode.getValue();
+            GameOfLife.inputFormatPrompt(primaryStage);
+        });
         langton.setOnMousePressed(event -> {
+            LangtonsLoop.unbounded = unbounded.isSelected();
+            LangtonsLoop.edgeMode = edgeMode.getValue();
             LangtonsLoop.launcher();
             primaryStage.close();
         });
-        generic.setOnMousePressed(event -> GenericCellularAutomata.promptUser(primaryStage));
+        generic.setOnMousePressed(event -> {
+            GenericCellularAutomata.unbounded = unbounded.isSelected();
+            GenericCellularAutomata.edgeMode = edgeMode.getValue();
+            GenericCellularAutomata.historyFile = historyFile.getText().isBlank() ? null : new File(historyFile.getText());
+            GenericCellularAutomata.promptUser(primaryStage);
+        });
 
         //Add nodes
         vBox.getChildren().add(label);
@@ -45,6 +85,11 @@ public class Main extends Application {
         vBox.getChildren().add(life);
         vBox.getChildren().add(langton);
         vBox.getChildren().add(generic);
+        vBox.getChildren().add(unbounded);
+        vBox.getChildren().add(edgeLabel);
+        vBox.getChildren().add(edgeMode);
+        vBox.getChildren().add(historyFile);
+        vBox.getChildren().add(lifeRule);
 
         //Show prompt
         GUIMethodPackage.renderVBoxPrompt(primaryStage, vBox);